@@ -1,5 +1,7 @@
 package floating_buoys;
 
+import java.util.concurrent.ForkJoinPool;
+
 import org.apache.commons.math3.distribution.BetaDistribution;
 
 /**
@@ -9,14 +11,22 @@ import org.apache.commons.math3.distribution.BetaDistribution;
  */
 public class BetaDistributionFloatingBuoy extends UniformDistributionFloatingBuoy {
 	
+	// Beta(1, 5) distribution, built once
+	private static final BetaDistribution BETA_DIST = new BetaDistribution(1.0, 5.0);
+	
+	// Inverse cumulative distribution function of Beta(1, 5) on the unit interval, tabulated once 
+	// from its closed form 1 - (1-p)^(1/5)
+	private static final double[] BETA_TABLE = 
+			InverseCdfSampleSource.tabulate(p -> 1 - Math.pow(1 - p, 0.2));
+	
 	/**
 	 * Main class.
 	 * 
 	 * @param args  no arguments necessary
 	 */
 	public static void main(String[] args) {
-		// Number of elements spent tuning each cast
-		int castSize = 10000;
+		// Number of elements spent tuning each cast, in each of the two passes
+		int castSize = 5000;
 		
 		// Number of casts
 		int numCast = 3;
@@ -24,18 +34,22 @@ public class BetaDistributionFloatingBuoy extends UniformDistributionFloatingBuo
 		// Input range (0, range-1)
 		int range = 1000000;
 		
-		// Number of tracer groups to cast (choose g s.t. 100 % g+1 = 0 and 0 < g <= 99)
-		int numGroups = 99;
+		// Number of evenly spaced tracer groups of the coarse pass
+		int numCoarse = 9;
+		
+		// Number of tracer groups placed where the coarse buoys are far apart
+		int numFine = 15;
 		
 		// Number of tracers per group (choose t >= 2)
 		int numTracers = 11;
 		
-		// Cast the tracer groups to obtain the initial buoy locations
+		// Cast coarse then fine tracer groups for the initial buoy locations, across all cores
 		BetaDistributionFloatingBuoy buoys = new BetaDistributionFloatingBuoy();
-		int[] initialLocations = buoys.cast(numGroups, numTracers, range, castSize, numCast);
+		int[] initialLocations = buoys.castAdaptive(numCoarse, numFine, numTracers, range, 
+				castSize, numCast, ForkJoinPool.commonPool());
 		
 		// Connect the initial locations to get a buoy for each percentile
-		int[] allBuoys = linkBuoys(initialLocations);
+		int[] allBuoys = linkBuoys(initialLocations, buoys.getCastPercentiles());
 		
 		// Output the estimates
 		for (int index = 0; index < allBuoys.length; index++) {
@@ -52,7 +66,19 @@ public class BetaDistributionFloatingBuoy extends UniformDistributionFloatingBuo
 	 */
 	@Override
 	public int sample(int minimum, int maximum) {
-		BetaDistribution betaDist = new BetaDistribution(1.0, 5.0);
-		return (int) Math.round(betaDist.sample() * (maximum-1));
+		return (int) Math.round(BETA_DIST.sample() * (maximum-1));
+	}
+	
+	/**
+	 * Get a source of samples from the Beta distribution backed by the shared table of its 
+	 * inverse cumulative distribution function.
+	 * 
+	 * @param minimum  the lower bound
+	 * @param maximum  the upper bound
+	 * @return  the sample source
+	 */
+	@Override
+	public SampleSource sampleSource(int minimum, int maximum) {
+		return new InverseCdfSampleSource(BETA_TABLE, minimum, maximum, rand.nextLong());
 	}
 }
\ No newline at end of file
@@ -0,0 +1,243 @@
+package floating_buoys;
+
+import java.util.SplittableRandom;
+
+/**
+ * Streaming floating buoy sketch over several numeric fields of the same records, for example 
+ * the latency, size and queue time of each request. Records arrive as a batch of parallel 
+ * columns, and every column has its own tracer groups, baseline and range. All columns share one 
+ * update threshold per record: the draws of a block are made once into a scratch array, then 
+ * each column runs over the block in turn, so only one tracer set is hot at a time and the 
+ * column is read sequentially. This replaces one random draw per field with one per record. The 
+ * estimate of each column is the same as that of an independent sketch, but the errors of 
+ * different columns are correlated.
+ * 
+ * @author Ruixin Yang
+ */
+public class ColumnarFloatingBuoySketch {
+	
+	// Maximum number of records whose update thresholds are drawn at once
+	private static final int BLOCK_SIZE = 4096;
+	
+	// Random instance (unshared, so drawing an update threshold never contends)
+	private final SplittableRandom rand;
+	
+	// Update threshold of each tracer, shared by every column
+	private final int[] threshold;
+	
+	// Tracer groups of each column, flattened with a stride of numTracers
+	private final int[][] tracers;
+	
+	// Baseline copy of the tracers of each column, refreshed in place after every prune
+	private final int[][] baseline;
+	
+	// Update thresholds drawn for the current block of records
+	private final int[] draws = new int[BLOCK_SIZE];
+	
+	// Input range of each column (0, range-1)
+	private final int[] range;
+	
+	// Number of tracer groups
+	private final int numGroups;
+	
+	// Number of tracers per group
+	private final int numTracers;
+	
+	// Number of records between two prunes
+	private final int pruneFrequency;
+	
+	// Number of records left until the next prune
+	private int untilPrune;
+	
+	// Number of records offered so far
+	private long count;
+	
+	/**
+	 * Construct a sketch with the tracer groups of each column evenly spaced from 0 to its range.
+	 * 
+	 * @param numGroups  number of tracer groups (choose g s.t. 100 % g+1 = 0 and 0 < g <= 99)
+	 * @param numTracers  number of tracers per group (choose t >= 2)
+	 * @param range  the maximum input value of each column
+	 * @param pruneFrequency  number of records between two prunes
+	 */
+	public ColumnarFloatingBuoySketch(int numGroups, int numTracers, int[] range,
+			int pruneFrequency) {
+		this.rand = new SplittableRandom();
+		this.numGroups = numGroups;
+		this.numTracers = numTracers;
+		this.threshold = UniformDistributionFloatingBuoy.getThresholds(
+				UniformDistributionFloatingBuoy.getPercentiles(numGroups), numTracers);
+		this.range = range.clone();
+		this.tracers = new int[range.length][];
+		this.baseline = new int[range.length][];
+		
+		for (int column = 0; column < range.length; column++) {
+			tracers[column] = UniformDistributionFloatingBuoy.initializeTracers(numGroups,
+					numTracers, range[column]);
+			baseline[column] = UniformDistributionFloatingBuoy.generateBaseline(tracers[column]);
+		}
+		
+		this.pruneFrequency = pruneFrequency;
+		this.untilPrune = pruneFrequency;
+	}
+	
+	/**
+	 * Push a batch of records through the tracer groups of every column, pruning whenever the 
+	 * prune frequency is reached. The update kernel requires inputs in [0, range), so values 
+	 * outside the range of their column are clamped to the nearest bound. Does not allocate.
+	 * 
+	 * @param columns  the input values, one array per column, indexed by record
+	 * @param off  the index of the first record
+	 * @param len  the number of records
+	 */
+	public void offer(int[][] columns, int off, int len) {
+		if (columns.length != range.length) {
+			throw new IllegalArgumentException("Expected " + range.length + " columns, got "
+					+ columns.length);
+		}
+		
+		int end = off + len;
+		
+		while (off < end) {
+			int chunk = Math.min(Math.min(end - off, untilPrune), BLOCK_SIZE);
+			
+			for (int index = 0; index < chunk; index++) {
+				draws[index] = rand.nextInt() >>> 1;
+			}
+			
+			for (int column = 0; column < columns.length; column++) {
+				int[] values = columns[column];
+				int[] columnTracers = tracers[column];
+				int maximum = range[column]-1;
+				
+				for (int index = 0; index < chunk; index++) {
+					UniformDistributionFloatingBuoy.updateTracers(columnTracers, threshold,
+							Math.min(Math.max(values[off + index], 0), maximum), draws[index]);
+				}
+			}
+			
+			off += chunk;
+			count += chunk;
+			untilPrune -= chunk;
+			
+			if (untilPrune == 0) {
+				prune();
+			}
+		}
+	}
+	
+	/**
+	 * Prune the tracers of every column that are far from the actual percentile, repartition, 
+	 * and refresh the baselines in place.
+	 */
+	public void prune() {
+		for (int column = 0; column < tracers.length; column++) {
+			UniformDistributionFloatingBuoy.prune(tracers[column], baseline[column], numTracers);
+		}
+		
+		untilPrune = pruneFrequency;
+	}
+	
+	/**
+	 * Get the current initial buoy locations of a column, bracketed by 0 and its range-1.
+	 * 
+	 * @param column  the index of the column
+	 * @return  the estimate of each tracer group, with the minimum and maximum at either end
+	 */
+	public int[] initialLocations(int column) {
+		int[] output = new int[numGroups+2];
+		output[numGroups+1] = range[column]-1;
+		
+		for (int index = 0; index < numGroups; index++) {
+			output[index+1] = tracers[column][index * numTracers + numTracers/2];
+		}
+		
+		return output;
+	}
+	
+	/**
+	 * Generate all 101 buoys of a column from the current estimates.
+	 * 
+	 * @param column  the index of the column
+	 * @return  the estimate for each percentile (from 0 to 100 percentile)
+	 */
+	public int[] buoys(int column) {
+		return UniformDistributionFloatingBuoy.linkBuoys(initialLocations(column));
+	}
+	
+	/**
+	 * Estimate an arbitrary quantile of a column by interpolating between the two nearest tracer 
+	 * groups.
+	 * 
+	 * @param column  the index of the column
+	 * @param p  the quantile, in [0, 1]
+	 * @return  the estimate
+	 */
+	public int quantile(int column, double p) {
+		return UniformDistributionFloatingBuoy.getQuantile(initialLocations(column), p);
+	}
+	
+	/**
+	 * Get the number of columns.
+	 * 
+	 * @return  the number of columns
+	 */
+	public int columns() {
+		return range.length;
+	}
+	
+	/**
+	 * Get the number of records offered so far.
+	 * 
+	 * @return  the count
+	 */
+	public long count() {
+		return count;
+	}
+	
+	/**
+	 * Main class.
+	 * 
+	 * @param args  no arguments necessary
+	 */
+	public static void main(String[] args) {
+		// Input range of each column: latency, bytes and queue time
+		int[] range = {1000000, 65536, 100000};
+		
+		// Number of records
+		int inputSize = 10000000;
+		
+		// Number of records in each batch
+		int batchSize = 65536;
+		
+		ColumnarFloatingBuoySketch sketch = new ColumnarFloatingBuoySketch(4, 11, range, 10000);
+		SplittableRandom input = new SplittableRandom();
+		int[][] columns = new int[range.length][batchSize];
+		long start = System.nanoTime();
+		
+		for (int offered = 0; offered < inputSize; offered += batchSize) {
+			int len = Math.min(batchSize, inputSize - offered);
+			
+			for (int column = 0; column < range.length; column++) {
+				for (int index = 0; index < len; index++) {
+					columns[column][index] = input.nextInt(range[column]);
+				}
+			}
+			
+			sketch.offer(columns, 0, len);
+		}
+		
+		long elapsed = System.nanoTime() - start;
+		
+		// Output the estimates and error of each column
+		for (int column = 0; column < range.length; column++) {
+			int[] allBuoys = sketch.buoys(column);
+			double error = UniformDistributionFloatingBuoy.getError(allBuoys, range[column]);
+			System.out.println("Column " + column + ": p50 " + allBuoys[50] + " p99 "
+					+ allBuoys[99] + " Error: "
+					+ UniformDistributionFloatingBuoy.DECIMAL_FORMAT.format(100 * error) + "%.");
+		}
+		
+		System.out.println(sketch.count() + " records in " + elapsed / 1000000 + " ms.");
+	}
+}
\ No newline at end of file
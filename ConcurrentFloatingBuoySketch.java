@@ -0,0 +1,278 @@
+package floating_buoys;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Floating buoy sketch that can be offered values from many threads at once. Every thread 
+ * updates its own replica of the tracer groups, so the hot path takes no lock and performs no 
+ * CAS; reads combine the replicas into one set of buoys. Replicas of threads that have 
+ * terminated are folded into a retired sketch when a thread registers or the replicas are 
+ * combined, so pooled or per-request threads do not make the replicas grow without bound. The 
+ * retired sketch keeps the knots of every replica it folds in, at most two per group each and 
+ * never more than two per value of the range.
+ * 
+ * @author Ruixin Yang
+ */
+public class ConcurrentFloatingBuoySketch {
+	
+	// Source of the seeds for the replicas
+	private final SplittableRandom seeds;
+	
+	// Replica owned by the current thread
+	private final ThreadLocal<Replica> replica;
+	
+	// Replica of every live thread, replaced as a whole when a thread registers or retires
+	private volatile Replica[] replicas = new Replica[0];
+	
+	// Values offered by threads that have terminated, guarded by this
+	private final FloatingBuoySketch retired;
+	
+	// Number of tracer groups
+	private final int numGroups;
+	
+	// Number of tracers per group
+	private final int numTracers;
+	
+	// Input range (0, range-1)
+	private final int range;
+	
+	// Number of offers between two prunes of each replica
+	private final int pruneFrequency;
+	
+	/**
+	 * Construct a concurrent sketch with tracer groups evenly spaced from 0 to range.
+	 * 
+	 * @param numGroups  number of tracer groups (choose g s.t. 100 % g+1 = 0 and 0 < g <= 99)
+	 * @param numTracers  number of tracers per group (choose t >= 2)
+	 * @param range  the maximum input value
+	 * @param pruneFrequency  number of offers between two prunes of each replica
+	 */
+	public ConcurrentFloatingBuoySketch(int numGroups, int numTracers, int range,
+			int pruneFrequency) {
+		this.seeds = new SplittableRandom();
+		this.numGroups = numGroups;
+		this.numTracers = numTracers;
+		this.range = range;
+		this.pruneFrequency = pruneFrequency;
+		this.retired = new FloatingBuoySketch(numGroups, numTracers, range, pruneFrequency);
+		this.replica = ThreadLocal.withInitial(this::register);
+	}
+	
+	/**
+	 * Replica of one thread. The counters and random state it writes on every offer are fields of 
+	 * the sketch, which {@link SketchPadding} precedes with two cache lines of padding; the 
+	 * replica follows them with two more, so neither the allocator nor a copying collector can 
+	 * place another thread's hot object on the same lines. Its arrays are allocated by the owning 
+	 * thread, so they start in its thread-local allocation buffer.
+	 */
+	private static final class Replica extends FloatingBuoySketch {
+		
+		// Padding that fills the two cache lines after the fields of the sketch
+		long p00, p01, p02, p03, p04, p05, p06, p07;
+		long p08, p09, p10, p11, p12, p13, p14, p15;
+		
+		// Thread that offers values to this replica, cleared once it is collected
+		final WeakReference<Thread> owner;
+		
+		Replica(int numGroups, int numTracers, int range, int pruneFrequency, long seed) {
+			super(numGroups, numTracers, range, pruneFrequency, seed);
+			this.owner = new WeakReference<>(Thread.currentThread());
+		}
+		
+		/**
+		 * Check whether the owning thread has terminated, after which the replica never changes.
+		 * 
+		 * @return  true if the owner is gone
+		 */
+		boolean isRetired() {
+			Thread thread = owner.get();
+			return thread == null || !thread.isAlive();
+		}
+	}
+	
+	/**
+	 * Create the replica of the calling thread, retiring the replicas of terminated threads.
+	 * 
+	 * @return  the new replica
+	 */
+	private synchronized Replica register() {
+		retireDead();
+		Replica sketch = new Replica(numGroups, numTracers, range, pruneFrequency, 
+				seeds.nextLong());
+		Replica[] registered = Arrays.copyOf(replicas, replicas.length+1);
+		registered[registered.length-1] = sketch;
+		replicas = registered;
+		return sketch;
+	}
+	
+	/**
+	 * Merge the replicas of terminated threads into the retired sketch and drop them. Their 
+	 * owners can no longer write, so they are merged without a snapshot.
+	 */
+	private synchronized void retireDead() {
+		Replica[] current = replicas;
+		Replica[] live = new Replica[current.length];
+		int numLive = 0;
+		
+		for (Replica sketch : current) {
+			if (sketch.isRetired()) {
+				retired.merge(sketch);
+			} else {
+				live[numLive++] = sketch;
+			}
+		}
+		
+		if (numLive < current.length) {
+			replicas = Arrays.copyOf(live, numLive);
+		}
+	}
+	
+	/**
+	 * Push a single input value into the replica of the calling thread.
+	 * 
+	 * @param value  the input value
+	 */
+	public void offer(int value) {
+		replica.get().offer(value);
+	}
+	
+	/**
+	 * Push a block of input values into the replica of the calling thread.
+	 * 
+	 * @param values  the input values
+	 * @param off  the index of the first value
+	 * @param len  the number of values
+	 */
+	public void offer(int[] values, int off, int len) {
+		replica.get().offer(values, off, len);
+	}
+	
+	/**
+	 * Combine the retired sketch and the replicas into one sketch by merging a consistent 
+	 * snapshot of each. Replicas are read without stopping their writers, so the result reflects 
+	 * each replica at some recent point, never in the middle of a prune.
+	 * 
+	 * @return  the combined sketch
+	 */
+	public FloatingBuoySketch combine() {
+		FloatingBuoySketch combined;
+		Replica[] live;
+		
+		synchronized (this) {
+			retireDead();
+			combined = retired.snapshot();
+			live = replicas;
+		}
+		
+		for (FloatingBuoySketch sketch : live) {
+			combined.merge(sketch.snapshot());
+		}
+		
+		return combined;
+	}
+	
+	/**
+	 * Get the combined initial buoy locations.
+	 * 
+	 * @return  the combined estimate of each tracer group, with the minimum and maximum at 
+	 *          either end
+	 */
+	public int[] initialLocations() {
+		return combine().initialLocations();
+	}
+	
+	/**
+	 * Generate all 101 buoys from the combined estimates.
+	 * 
+	 * @return  the estimate for each percentile (from 0 to 100 percentile)
+	 */
+	public int[] buoys() {
+		return UniformDistributionFloatingBuoy.linkBuoys(initialLocations());
+	}
+	
+	/**
+	 * Estimate an arbitrary quantile from the combined estimates.
+	 * 
+	 * @param p  the quantile, in [0, 1]
+	 * @return  the estimate
+	 */
+	public int quantile(double p) {
+		return UniformDistributionFloatingBuoy.getQuantile(initialLocations(), p);
+	}
+	
+	/**
+	 * Get the number of values offered so far across all threads.
+	 * 
+	 * @return  the count
+	 */
+	public long count() {
+		long total;
+		Replica[] live;
+		
+		// A replica is either still live or already retired, never both
+		synchronized (this) {
+			total = retired.count();
+			live = replicas;
+		}
+		
+		for (FloatingBuoySketch sketch : live) {
+			total += sketch.count();
+		}
+		
+		return total;
+	}
+	
+	/**
+	 * Main class.
+	 * 
+	 * @param args  optionally, the number of threads
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		// Number of threads
+		int numThreads = args.length > 0 ? Integer.parseInt(args[0])
+				: Runtime.getRuntime().availableProcessors();
+		
+		// Number of input values per thread
+		int inputSize = 1000000;
+		
+		// Input range (0, range-1)
+		int range = 1000000;
+		
+		ConcurrentFloatingBuoySketch sketch = new ConcurrentFloatingBuoySketch(4, 11, range, 10000);
+		CountDownLatch done = new CountDownLatch(numThreads);
+		long start = System.nanoTime();
+		
+		for (int thread = 0; thread < numThreads; thread++) {
+			new Thread(() -> {
+				SplittableRandom input = new SplittableRandom();
+				int[] block = new int[1024];
+				
+				for (int iter = 0; iter < inputSize; iter += block.length) {
+					for (int index = 0; index < block.length; index++) {
+						block[index] = input.nextInt(range);
+					}
+					
+					sketch.offer(block, 0, block.length);
+				}
+				
+				done.countDown();
+			}).start();
+		}
+		
+		done.await();
+		long elapsed = System.nanoTime() - start;
+		
+		// Output the estimates
+		int[] allBuoys = sketch.buoys();
+		
+		for (int index = 0; index < allBuoys.length; index++) {
+			System.out.println(allBuoys[index]);
+		}
+		
+		System.out.println(sketch.count() + " values in " + elapsed / 1000000 + " ms on "
+				+ numThreads + " threads.");
+	}
+}
\ No newline at end of file
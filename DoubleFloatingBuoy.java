@@ -0,0 +1,308 @@
+package floating_buoys;
+
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Floating buoy engine over double values, for fractional metrics that would otherwise have to 
+ * be scaled to ints. As in {@link LongFloatingBuoy}, the tracers start from the empirical 
+ * quantiles of a reservoir of samples and live on a grid whose spacing makes the spread of a 
+ * typical group about 2^{@value LongFloatingBuoy#STEP_SHIFT} grid points, so the grid follows 
+ * the scale of the data rather than that of the range. Each input is mapped to the grid once, 
+ * instead of comparing doubles in every lane, and the update and prune loops are those of 
+ * {@link UniformDistributionFloatingBuoy}. Estimates are mapped back to doubles.
+ * 
+ * @author Ruixin Yang
+ */
+public class DoubleFloatingBuoy {
+	
+	/**
+	 * Main class.
+	 * 
+	 * @param args  no arguments necessary
+	 */
+	public static void main(String[] args) {
+		// Input range [minimum, maximum): a signed fraction
+		double minimum = -1;
+		double maximum = 1;
+		
+		// Number of input values
+		int inputSize = 10000000;
+		
+		// Number of input values between two prunes
+		int pruneFrequency = 10000;
+		
+		// Number of tracer groups (choose g s.t. 100 % g+1 = 0 and 0 < g <= 99)
+		int numGroups = 4;
+		
+		// Number of tracers per group (choose t >= 2)
+		int numTracers = 11;
+		
+		// Number of samples that place the tracers before the updates
+		int reservoirSize = 4096;
+		
+		double[] percentile = UniformDistributionFloatingBuoy.getPercentiles(numGroups);
+		SplittableRandom rand = new SplittableRandom();
+		double[] reservoir = new double[reservoirSize];
+		
+		for (int index = 0; index < reservoirSize; index++) {
+			reservoir[index] = rand.nextDouble(minimum, maximum);
+		}
+		
+		Arrays.sort(reservoir);
+		double resolution = getResolution(percentile, reservoir, minimum, maximum);
+		int[] tracers = initializeTracers(percentile, numTracers, reservoir, minimum, resolution);
+		int[] baseline = UniformDistributionFloatingBuoy.generateBaseline(tracers);
+		int[] threshold = UniformDistributionFloatingBuoy.getThresholds(percentile, numTracers);
+		
+		for (int iter = 1; iter <= inputSize; iter++) {
+			updateTracers(tracers, threshold, rand.nextDouble(minimum, maximum),
+					rand.nextInt() >>> 1, minimum, resolution);
+			
+			if (iter % pruneFrequency == 0) {
+				UniformDistributionFloatingBuoy.prune(tracers, baseline, numTracers);
+			}
+		}
+		
+		// Connect the middle tracers to get a buoy for each percentile
+		double[] allBuoys = linkBuoys(getInitialLocations(tracers, numTracers, minimum, maximum,
+				resolution));
+		
+		// Output the estimates
+		for (int index = 0; index < allBuoys.length; index++) {
+			System.out.println(allBuoys[index]);
+		}
+		
+		// Measure the error
+		UniformDistributionFloatingBuoy.DECIMAL_FORMAT.setRoundingMode(RoundingMode.HALF_UP);
+		System.out.println("Error: " + UniformDistributionFloatingBuoy.DECIMAL_FORMAT.format(
+				100 * getError(allBuoys, minimum, maximum)) + "%.");
+	}
+	
+	/**
+	 * Get the finest spacing that maps the whole range onto int grid points.
+	 * 
+	 * @param minimum  the minimum input value
+	 * @param maximum  the maximum input value
+	 * @return  the spacing of the grid
+	 */
+	public static double getResolution(double minimum, double maximum) {
+		return (maximum - minimum) / Integer.MAX_VALUE;
+	}
+	
+	/**
+	 * Get the spacing of the grid from a sorted reservoir of samples: the median spread of the 
+	 * groups that {@link #initializeTracers(double[], int, double[], double, double)} places, 
+	 * divided by 2^{@value LongFloatingBuoy#STEP_SHIFT}, but never finer than 
+	 * {@link #getResolution(double, double)}.
+	 * 
+	 * @param percentile  the target percentiles
+	 * @param reservoir  the samples, sorted in ascending order
+	 * @param minimum  the minimum input value
+	 * @param maximum  the maximum input value
+	 * @return  the spacing of the grid
+	 */
+	public static double getResolution(double[] percentile, double[] reservoir, double minimum,
+			double maximum) {
+		double[] spread = new double[percentile.length];
+		
+		for (int index = 0; index < percentile.length; index++) {
+			double below = index == 0 ? 0 : percentile[index-1];
+			double above = index == percentile.length-1 ? 1 : percentile[index+1];
+			spread[index] = empiricalQuantile(reservoir, (percentile[index] + above) / 2) 
+					- empiricalQuantile(reservoir, (below + percentile[index]) / 2);
+		}
+		
+		Arrays.sort(spread);
+		return Math.max(getResolution(minimum, maximum), 
+				spread[spread.length/2] / (1L << LongFloatingBuoy.STEP_SHIFT));
+	}
+	
+	/**
+	 * Get the empirical quantile of a sorted array of samples.
+	 * 
+	 * @param sorted  the samples, sorted in ascending order
+	 * @param p  the quantile, in [0, 1]
+	 * @return  the sample at that rank
+	 */
+	private static double empiricalQuantile(double[] sorted, double p) {
+		return sorted[(int) Math.round(Math.min(1, Math.max(0, p)) * (sorted.length-1))];
+	}
+	
+	/**
+	 * Map a value to the grid point at or below it.
+	 * 
+	 * @param value  the value, in [minimum, maximum)
+	 * @param minimum  the lower bound of the grid
+	 * @param resolution  the spacing of the grid
+	 * @return  the grid point
+	 */
+	public static int toGrid(double value, double minimum, double resolution) {
+		return (int) ((value - minimum) / resolution);
+	}
+	
+	/**
+	 * Map a grid point back to the value in the middle of its cell.
+	 * 
+	 * @param point  the grid point
+	 * @param minimum  the lower bound of the grid
+	 * @param resolution  the spacing of the grid
+	 * @return  the value
+	 */
+	public static double fromGrid(int point, double minimum, double resolution) {
+		return minimum + (point + 0.5) * resolution;
+	}
+	
+	/**
+	 * Initialize the set of tracer groups evenly spaced from minimum to maximum, as grid points.
+	 * 
+	 * @param numGroups  number of tracer groups
+	 * @param numTracers  number of tracers in each group
+	 * @param minimum  the minimum input value
+	 * @param maximum  the maximum input value
+	 * @param resolution  the spacing of the grid
+	 * @return  the initialized set of tracer groups
+	 */
+	public static int[] initializeTracers(int numGroups, int numTracers, double minimum,
+			double maximum, double resolution) {
+		return UniformDistributionFloatingBuoy.initializeTracers(numGroups, numTracers,
+				toGrid(maximum, minimum, resolution));
+	}
+	
+	/**
+	 * Initialize the tracer groups from a sorted reservoir of samples, as grid points, by 
+	 * {@link UniformDistributionFloatingBuoy#initializeTracers(double[], int, int[])}.
+	 * 
+	 * @param percentile  the target percentiles
+	 * @param numTracers  number of tracers in each group
+	 * @param reservoir  the samples in [minimum, maximum), sorted in ascending order
+	 * @param minimum  the lower bound of the grid
+	 * @param resolution  the spacing of the grid
+	 * @return  the initialized set of tracer groups
+	 */
+	public static int[] initializeTracers(double[] percentile, int numTracers, double[] reservoir,
+			double minimum, double resolution) {
+		int[] scaled = new int[reservoir.length];
+		
+		for (int index = 0; index < reservoir.length; index++) {
+			scaled[index] = toGrid(reservoir[index], minimum, resolution);
+		}
+		
+		return UniformDistributionFloatingBuoy.initializeTracers(percentile, numTracers, scaled);
+	}
+	
+	/**
+	 * Move every tracer one grid point toward the input value if its update threshold allows it.
+	 * 
+	 * @param tracers  the tracer groups, as grid points
+	 * @param threshold  the update threshold of each tracer
+	 * @param input  the input value, in [minimum, maximum)
+	 * @param updateThreshold  the random draw, in [0, 2^31)
+	 * @param minimum  the lower bound of the grid
+	 * @param resolution  the spacing of the grid
+	 */
+	public static void updateTracers(int[] tracers, int[] threshold, double input,
+			int updateThreshold, double minimum, double resolution) {
+		UniformDistributionFloatingBuoy.updateTracers(tracers, threshold,
+				toGrid(input, minimum, resolution), updateThreshold);
+	}
+	
+	/**
+	 * Get the initial buoy locations: the middle tracer of each group, bracketed by the minimum 
+	 * and maximum.
+	 * 
+	 * @param tracers  the tracer groups, as grid points
+	 * @param numTracers  number of tracers in each group
+	 * @param minimum  the minimum input value
+	 * @param maximum  the maximum input value
+	 * @param resolution  the spacing of the grid
+	 * @return  the initial location (estimate) of each buoy (percentile)
+	 */
+	public static double[] getInitialLocations(int[] tracers, int numTracers, double minimum,
+			double maximum, double resolution) {
+		int numGroups = tracers.length / numTracers;
+		double[] output = new double[numGroups+2];
+		output[0] = minimum;
+		output[numGroups+1] = maximum;
+		
+		for (int index = 0; index < numGroups; index++) {
+			output[index+1] = Math.min(fromGrid(tracers[index * numTracers + numTracers/2],
+					minimum, resolution), maximum);
+		}
+		
+		return output;
+	}
+	
+	/**
+	 * Generate all 101 buoys from the initial locations.
+	 * 
+	 * @param initialLocations  the initial buoy locations
+	 * @return  the estimate for each percentile (from 0 to 100 percentile)
+	 */
+	public static double[] linkBuoys(double[] initialLocations) {
+		double[] allBuoys = new double[101];
+		int groupWidth = 100 / (initialLocations.length-1);
+		
+		for (int index = 0; index < allBuoys.length; index++) {
+			allBuoys[index] = index % groupWidth == 0 ? initialLocations[index / groupWidth]
+					: interpolate(initialLocations, (double) index / groupWidth);
+		}
+		
+		return allBuoys;
+	}
+	
+	/**
+	 * Estimate an arbitrary quantile by interpolating between the two nearest initial locations.
+	 * 
+	 * @param initialLocations  the initial buoy locations
+	 * @param p  the quantile, in [0, 1]
+	 * @return  the estimate
+	 */
+	public static double getQuantile(double[] initialLocations, double p) {
+		double location = p * (initialLocations.length-1);
+		
+		if (location <= 0) {
+			return initialLocations[0];
+		} else if (location >= initialLocations.length-1) {
+			return initialLocations[initialLocations.length-1];
+		}
+		
+		return interpolate(initialLocations, location);
+	}
+	
+	/**
+	 * Interpolate between the two initial locations on either side of a fractional index.
+	 * 
+	 * @param initialLocations  the initial buoy locations
+	 * @param location  the fractional index, inside the array
+	 * @return  the estimate
+	 */
+	private static double interpolate(double[] initialLocations, double location) {
+		double low = initialLocations[(int) location];
+		double high = initialLocations[(int) location + 1];
+		return (location-((int) location)) * (high-low) + low;
+	}
+	
+	/**
+	 * Get the error across all buoy estimates (percentiles) of a uniform input, relative to the 
+	 * width of the range.
+	 * 
+	 * @param allBuoys  the array of buoys
+	 * @param minimum  the minimum input value
+	 * @param maximum  the maximum input value
+	 * @return  the relative error
+	 */
+	public static double getError(double[] allBuoys, double minimum, double maximum) {
+		double totalError = 0;
+		double total = 0;
+		
+		for (int index = 0; index < allBuoys.length; index++) {
+			double actual = index * (maximum - minimum) / (allBuoys.length-1);
+			totalError += Math.abs(actual - (allBuoys[index] - minimum));
+			total += actual;
+		}
+		
+		return totalError / total;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,317 @@
+package floating_buoys;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Accuracy and cost evaluation of casts on any sample distribution. The samples drawn by a cast 
+ * are recorded and sorted to get the exact quantiles of the stream, so the error of every buoy 
+ * is measured against the data the estimator actually saw instead of a uniform formula. Each 
+ * evaluation also reports the samples consumed, the wall time and the bytes allocated by the 
+ * cast. Every cast draws its samples and update thresholds from generators of its own, so sweeps 
+ * can run casts in parallel without contending on the shared random instance.
+ * 
+ * @author Ruixin Yang
+ */
+public class FloatingBuoyEvaluation {
+	
+	// Quantiles whose error is reported individually
+	private static final double[] REPORTED = {0.5, 0.9, 0.99};
+	
+	/**
+	 * Outcome of evaluating one configuration on one distribution.
+	 */
+	public static class Result {
+		
+		// Name of the distribution
+		public final String distribution;
+		
+		// Configuration of the cast
+		public final int numGroups;
+		public final int numTracers;
+		public final int castSize;
+		public final int numCast;
+		
+		// Number of samples consumed by the cast
+		public final long samples;
+		
+		// Wall time of the cast in nanoseconds
+		public final long nanos;
+		
+		// Bytes allocated by the cast, or -1 if the JVM cannot tell
+		public final long allocatedBytes;
+		
+		// Error of each of the 101 buoys, relative to the spread of the samples
+		public final double[] error;
+		
+		Result(String distribution, int numGroups, int numTracers, int castSize, int numCast,
+				long samples, long nanos, long allocatedBytes, double[] error) {
+			this.distribution = distribution;
+			this.numGroups = numGroups;
+			this.numTracers = numTracers;
+			this.castSize = castSize;
+			this.numCast = numCast;
+			this.samples = samples;
+			this.nanos = nanos;
+			this.allocatedBytes = allocatedBytes;
+			this.error = error;
+		}
+		
+		/**
+		 * Get the mean error over every buoy.
+		 * 
+		 * @return  the mean error
+		 */
+		public double meanError() {
+			double total = 0;
+			
+			for (double buoyError : error) {
+				total += buoyError;
+			}
+			
+			return total / error.length;
+		}
+		
+		/**
+		 * Get the largest error of any buoy.
+		 * 
+		 * @return  the maximum error
+		 */
+		public double maxError() {
+			double max = 0;
+			
+			for (double buoyError : error) {
+				max = Math.max(max, buoyError);
+			}
+			
+			return max;
+		}
+		
+		/**
+		 * Format the result as a tab-separated row, errors in percent.
+		 * 
+		 * @return  the row
+		 */
+		@Override
+		public String toString() {
+			StringBuilder row = new StringBuilder();
+			row.append(distribution).append('\t').append(numGroups).append('\t')
+					.append(numTracers).append('\t').append(castSize).append('\t')
+					.append(numCast).append('\t').append(samples).append('\t')
+					.append(nanos / 1000000).append('\t').append(allocatedBytes / 1024)
+					.append('\t').append(format(meanError())).append('\t')
+					.append(format(maxError()));
+			
+			for (double p : REPORTED) {
+				row.append('\t').append(format(error[(int) Math.round(p * 100)]));
+			}
+			
+			return row.toString();
+		}
+		
+		/**
+		 * Format an error in percent.
+		 * 
+		 * @param error  the error
+		 * @return  the formatted percentage
+		 */
+		private static String format(double error) {
+			return UniformDistributionFloatingBuoy.DECIMAL_FORMAT.format(100 * error);
+		}
+	}
+	
+	/**
+	 * Get the header matching {@link Result#toString}.
+	 * 
+	 * @return  the header row
+	 */
+	public static String header() {
+		StringBuilder row = new StringBuilder("distribution\tgroups\ttracers\tcastSize\tnumCast"
+				+ "\tsamples\tms\tallocKB\tmean%\tmax%");
+		
+		for (double p : REPORTED) {
+			row.append("\tp").append((int) Math.round(p * 100)).append('%');
+		}
+		
+		return row.toString();
+	}
+	
+	/**
+	 * Cast one configuration on a distribution and measure it against the exact quantiles of the 
+	 * recorded samples. The cast runs sequentially on the calling thread, so its allocations can 
+	 * be attributed to it.
+	 * 
+	 * @param name  the name of the distribution
+	 * @param buoys  the estimator drawing from the distribution
+	 * @param numGroups  number of tracer groups to cast
+	 * @param numTracers  number of tracers in each group
+	 * @param range  the maximum input value
+	 * @param castSize  the number of input elements evaluating each cast
+	 * @param numCast  the maximum number of casts
+	 * @return  the result
+	 */
+	public static Result evaluate(String name, UniformDistributionFloatingBuoy buoys,
+			int numGroups, int numTracers, int range, int castSize, int numCast) {
+		int[] recording = new int[buoys.reservoirSize + castSize * numCast];
+		buoys.setRecording(recording);
+		
+		long allocatedBefore = allocatedBytes();
+		long start = System.nanoTime();
+		int[] initialLocations = buoys.cast(numGroups, numTracers, range, castSize, numCast);
+		long nanos = System.nanoTime() - start;
+		long allocated = allocatedBefore < 0 ? -1 : allocatedBytes() - allocatedBefore;
+		buoys.setRecording(null);
+		
+		int[] allBuoys = UniformDistributionFloatingBuoy.linkBuoys(initialLocations);
+		int[] exact = exactBuoys(recording, (int) buoys.getSamplesUsed());
+		double spread = Math.max(1, exact[exact.length-1] - exact[0]);
+		double[] error = new double[allBuoys.length];
+		
+		for (int index = 0; index < allBuoys.length; index++) {
+			error[index] = Math.abs((double) allBuoys[index] - exact[index]) / spread;
+		}
+		
+		return new Result(name, numGroups, numTracers, castSize, numCast, buoys.getSamplesUsed(),
+				nanos, allocated, error);
+	}
+	
+	/**
+	 * Get the exact value of each of the 101 percentiles of a set of samples, by nearest rank.
+	 * 
+	 * @param samples  the samples, reordered in place
+	 * @param length  the number of samples
+	 * @return  the exact value for each percentile (from 0 to 100 percentile)
+	 */
+	public static int[] exactBuoys(int[] samples, int length) {
+		Arrays.parallelSort(samples, 0, length);
+		int[] exact = new int[101];
+		
+		for (int index = 0; index < exact.length; index++) {
+			exact[index] = samples[(int) Math.round(index / 100.0 * (length-1))];
+		}
+		
+		return exact;
+	}
+	
+	/**
+	 * Get the number of bytes allocated by the current thread so far.
+	 * 
+	 * @return  the number of bytes, or -1 if the JVM cannot tell
+	 */
+	private static long allocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads).getCurrentThreadAllocatedBytes();
+		}
+		
+		return -1;
+	}
+	
+	/**
+	 * Evaluate every combination of distribution and configuration, one cast per task. The first 
+	 * combination is cast once beforehand and discarded, so class loading is not billed to it.
+	 * 
+	 * @param names  the names of the distributions
+	 * @param distributions  a factory of estimators for each distribution
+	 * @param numGroups  the numbers of tracer groups to try
+	 * @param numTracers  number of tracers in each group
+	 * @param range  the maximum input value
+	 * @param castSizes  the cast sizes to try
+	 * @param numCasts  the numbers of casts to try
+	 * @param pool  the pool to run the evaluations on, or null to run them one after another on 
+	 *          the calling thread
+	 * @return  the results, in the order of the combinations
+	 * @throws InterruptedException  if interrupted while waiting for the results
+	 */
+	public static List<Result> sweep(String[] names,
+			List<Supplier<UniformDistributionFloatingBuoy>> distributions, int[] numGroups,
+			int numTracers, int range, int[] castSizes, int[] numCasts, ForkJoinPool pool)
+			throws InterruptedException {
+		List<Callable<Result>> tasks = new ArrayList<>();
+		evaluate(names[0], distributions.get(0).get(), numGroups[0], numTracers, range, 
+				castSizes[0], numCasts[0]);
+		
+		for (int distribution = 0; distribution < names.length; distribution++) {
+			String name = names[distribution];
+			Supplier<UniformDistributionFloatingBuoy> factory = distributions.get(distribution);
+			
+			for (int groups : numGroups) {
+				for (int castSize : castSizes) {
+					for (int numCast : numCasts) {
+						tasks.add(() -> evaluate(name, factory.get(), groups, numTracers, range,
+								castSize, numCast));
+					}
+				}
+			}
+		}
+		
+		List<Result> results = new ArrayList<>();
+		
+		if (pool == null) {
+			for (Callable<Result> task : tasks) {
+				try {
+					results.add(task.call());
+				} catch (Exception e) {
+					throw new IllegalStateException("Evaluation failed", e);
+				}
+			}
+			
+			return results;
+		}
+		
+		for (Future<Result> result : pool.invokeAll(tasks)) {
+			try {
+				results.add(result.get());
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("Evaluation failed", e.getCause());
+			}
+		}
+		
+		return results;
+	}
+	
+	/**
+	 * Main class.
+	 * 
+	 * @param args  "sequential" to run the casts one after another instead of in parallel
+	 * @throws InterruptedException  if interrupted while waiting for the results
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		// Input range (0, range-1)
+		int range = 1000000;
+		
+		// Number of tracers per group (choose t >= 2)
+		int numTracers = 11;
+		
+		// Configurations to sweep
+		int[] numGroups = {4, 9, 99};
+		int[] castSizes = {1000, 10000};
+		int[] numCasts = {1, 3, 10};
+		
+		// Every sample() implementation
+		String[] names = {"uniform", "gaussian", "powerlaw", "beta"};
+		List<Supplier<UniformDistributionFloatingBuoy>> distributions = List.of(
+				UniformDistributionFloatingBuoy::new, GaussianDistributionFloatingBuoy::new,
+				PowerLawFloatingBuoy::new, BetaDistributionFloatingBuoy::new);
+		
+		System.out.println(header());
+		
+		// Pool of the sweep, or null to run it on this thread
+		ForkJoinPool pool = args.length > 0 && args[0].equals("sequential") ? null 
+				: ForkJoinPool.commonPool();
+		
+		for (Result result : sweep(names, distributions, numGroups, numTracers, range, castSizes,
+				numCasts, pool)) {
+			System.out.println(result);
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,150 @@
+package floating_buoys;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events of the floating buoy estimators, so that calibration can be 
+ * correlated with GC and CPU activity in the same recording. Cast rounds and prunes are emitted 
+ * by {@link UniformDistributionFloatingBuoy}; buoy drift is sampled periodically from sketches 
+ * registered with {@link #watch}. When a recording does not enable an event, creating it is 
+ * optimized away and the per-group prune events are skipped by a single check per prune.
+ * 
+ * @author Ruixin Yang
+ */
+public class FloatingBuoyEvents {
+	
+	// Type of the prune event, checked once per prune before emitting per-group events
+	static final EventType PRUNE = EventType.getEventType(PruneEvent.class);
+	
+	/**
+	 * One round of a cast: a block of samples run through every active tracer group, then a 
+	 * prune.
+	 */
+	@Name("floating_buoys.Cast")
+	@Label("Cast Round")
+	@Category("Floating Buoys")
+	@StackTrace(false)
+	static class CastEvent extends Event {
+		
+		@Label("Round")
+		int round;
+		
+		@Label("Samples")
+		@Description("Number of samples run through the tracers in this round")
+		int samples;
+		
+		@Label("Active Groups")
+		@Description("Number of tracer groups that have not converged yet")
+		int activeGroups;
+	}
+	
+	/**
+	 * Prune of one tracer group.
+	 */
+	@Name("floating_buoys.Prune")
+	@Label("Prune")
+	@Category("Floating Buoys")
+	@StackTrace(false)
+	static class PruneEvent extends Event {
+		
+		@Label("Group")
+		int group;
+		
+		@Label("Low")
+		@Description("Index of the lowest tracer kept")
+		int low;
+		
+		@Label("High")
+		@Description("Index of the highest tracer kept")
+		int high;
+		
+		@Label("Spread")
+		@Description("Distance between the lowest and highest tracer after the prune")
+		long spread;
+	}
+	
+	/**
+	 * Movement of the buoys of a sketch since the previous sample.
+	 */
+	@Name("floating_buoys.BuoyDrift")
+	@Label("Buoy Drift")
+	@Category("Floating Buoys")
+	@Period("1 s")
+	@StackTrace(false)
+	static class BuoyDriftEvent extends Event {
+		
+		@Label("Sketch")
+		String sketch;
+		
+		@Label("Count")
+		@Description("Number of values offered to the sketch so far")
+		long count;
+		
+		@Label("Max Drift")
+		@Description("Largest movement of a tracer group estimate since the previous sample")
+		long maxDrift;
+		
+		@Label("Mean Drift")
+		@Description("Mean movement of the tracer group estimates since the previous sample")
+		double meanDrift;
+	}
+	
+	/**
+	 * Emit the prune event of one group.
+	 * 
+	 * @param group  the index of the group
+	 * @param low  the index of the lowest tracer kept
+	 * @param high  the index of the highest tracer kept
+	 * @param spread  the distance between the lowest and highest tracer after the prune
+	 */
+	static void prune(int group, int low, int high, long spread) {
+		PruneEvent event = new PruneEvent();
+		event.group = group;
+		event.low = low;
+		event.high = high;
+		event.spread = spread;
+		event.commit();
+	}
+	
+	/**
+	 * Sample the buoy drift of a sketch once per period of the drift event, while a recording 
+	 * enables it. The sketch is read without stopping its writer.
+	 * 
+	 * @param name  the name of the sketch in the events
+	 * @param sketch  the sketch
+	 * @return  a handle that stops sampling the sketch when run
+	 */
+	public static Runnable watch(String name, FloatingBuoySketch sketch) {
+		int[][] previous = {sketch.initialLocations()};
+		Runnable hook = () -> {
+			int[] current = sketch.initialLocations();
+			long maxDrift = 0;
+			long totalDrift = 0;
+			
+			for (int index = 1; index < current.length-1; index++) {
+				long drift = Math.abs((long) current[index] - previous[0][index]);
+				maxDrift = Math.max(maxDrift, drift);
+				totalDrift += drift;
+			}
+			
+			BuoyDriftEvent event = new BuoyDriftEvent();
+			event.sketch = name;
+			event.count = sketch.count();
+			event.maxDrift = maxDrift;
+			event.meanDrift = (double) totalDrift / Math.max(1, current.length-2);
+			event.commit();
+			previous[0] = current;
+		};
+		
+		FlightRecorder.addPeriodicEvent(BuoyDriftEvent.class, hook);
+		return () -> FlightRecorder.removePeriodicEvent(hook);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,319 @@
+package floating_buoys;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Compute the buoys of a recorded dataset instead of a synthetic one. The file is memory-mapped 
+ * in chunks and parsed in place, without creating strings or loading it whole, and the values 
+ * are pushed through the bulk update path in blocks. Three formats are read: raw little-endian 
+ * int or long columns, and newline-delimited text, where the first integer on each line is used. 
+ * Values are clamped to [0, range). Ranges that fit in an int feed a {@link FloatingBuoySketch}; 
+ * wider ranges feed the {@link LongFloatingBuoy} engine, whose tracers and grid are placed from 
+ * the empirical quantiles of the first block.
+ * 
+ * @author Ruixin Yang
+ */
+public class FloatingBuoyFileIngest {
+	
+	// Maximum size of a single mapping in bytes, a multiple of every value width
+	private static final long MAX_CHUNK_SIZE = 1L << 30;
+	
+	// Number of values pushed into the estimator at once
+	private static final int BLOCK_SIZE = 4096;
+	
+	// Block of parsed values
+	private final long[] block = new long[BLOCK_SIZE];
+	
+	// Number of values in the block
+	private int blockSize;
+	
+	// Int sketch, or null if the range needs the long engine
+	private final FloatingBuoySketch sketch;
+	
+	// Block handed to the int sketch
+	private final int[] intBlock;
+	
+	// Long engine state, or null if the range fits in an int
+	private int[] tracers;
+	private int[] baseline;
+	private int shift;
+	private final double[] percentile;
+	private final int[] threshold;
+	private final SplittableRandom rand = new SplittableRandom();
+	
+	// Number of tracers per group
+	private final int numTracers;
+	
+	// Whether the long tracers and grid have been placed from the first block
+	private boolean placed;
+	
+	// Input range (0, range-1)
+	private final long range;
+	
+	// Number of offers between two prunes
+	private final int pruneFrequency;
+	
+	// Number of offers to the long engine left until the next prune
+	private int untilPrune;
+	
+	// Number of values ingested
+	private long count;
+	
+	// Text parser state carried across chunks: the value so far, whether it has digits and a
+	// sign, and whether the rest of the line is skipped
+	private long value;
+	private boolean inNumber;
+	private boolean negative;
+	private boolean skipLine;
+	
+	/**
+	 * Construct an ingestion into fresh tracer groups.
+	 * 
+	 * @param numGroups  number of tracer groups (choose g s.t. 100 % g+1 = 0 and 0 < g <= 99)
+	 * @param numTracers  number of tracers per group (choose t >= 2)
+	 * @param range  the maximum input value
+	 * @param pruneFrequency  number of values between two prunes
+	 */
+	public FloatingBuoyFileIngest(int numGroups, int numTracers, long range, int pruneFrequency) {
+		this.numTracers = numTracers;
+		this.range = range;
+		this.pruneFrequency = pruneFrequency;
+		this.untilPrune = pruneFrequency;
+		
+		if (range <= Integer.MAX_VALUE) {
+			this.sketch = new FloatingBuoySketch(numGroups, numTracers, (int) range,
+					pruneFrequency);
+			this.intBlock = new int[BLOCK_SIZE];
+			this.tracers = null;
+			this.baseline = null;
+			this.percentile = null;
+			this.threshold = null;
+		} else {
+			this.sketch = null;
+			this.intBlock = null;
+			this.shift = LongFloatingBuoy.getShift(range);
+			this.tracers = LongFloatingBuoy.initializeTracers(numGroups, numTracers, range, shift);
+			this.baseline = UniformDistributionFloatingBuoy.generateBaseline(tracers);
+			this.percentile = UniformDistributionFloatingBuoy.getPercentiles(numGroups);
+			this.threshold = UniformDistributionFloatingBuoy.getThresholds(percentile, numTracers);
+		}
+	}
+	
+	/**
+	 * Ingest a file.
+	 * 
+	 * @param path  the file
+	 * @param format  "int" or "long" for little-endian binary columns, or "text"
+	 * @throws IOException  if the file cannot be mapped
+	 */
+	public void ingest(Path path, String format) throws IOException {
+		int width = format.equals("int") ? 4 : format.equals("long") ? 8 : 0;
+		
+		if (width == 0 && !format.equals("text")) {
+			throw new IllegalArgumentException("Unknown format " + format);
+		}
+		
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			
+			for (long start = 0; start < size; start += MAX_CHUNK_SIZE) {
+				MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, start,
+						Math.min(MAX_CHUNK_SIZE, size - start));
+				chunk.order(ByteOrder.LITTLE_ENDIAN);
+				
+				if (width == 0) {
+					parseText(chunk);
+				} else {
+					parseBinary(chunk, width);
+				}
+			}
+		}
+		
+		// A last line without a newline still holds a value
+		endNumber();
+		flush();
+	}
+	
+	/**
+	 * Read the whole values of a binary chunk. A trailing partial value is ignored.
+	 * 
+	 * @param chunk  the mapped chunk
+	 * @param width  the width of a value in bytes
+	 */
+	private void parseBinary(MappedByteBuffer chunk, int width) {
+		int end = chunk.limit() - chunk.limit() % width;
+		
+		for (int offset = 0; offset < end; offset += width) {
+			add(width == 4 ? chunk.getInt(offset) : chunk.getLong(offset));
+		}
+	}
+	
+	/**
+	 * Scan a text chunk byte by byte for the first integer on each line.
+	 * 
+	 * @param chunk  the mapped chunk
+	 */
+	private void parseText(MappedByteBuffer chunk) {
+		int end = chunk.limit();
+		
+		for (int offset = 0; offset < end; offset++) {
+			byte character = chunk.get(offset);
+			
+			if (character == '\n') {
+				endNumber();
+				skipLine = false;
+			} else if (skipLine) {
+				continue;
+			} else if (character >= '0' && character <= '9') {
+				value = value * 10 + (character - '0');
+				inNumber = true;
+			} else if (character == '-' && !inNumber) {
+				negative = true;
+			} else if (inNumber) {
+				endNumber();
+				skipLine = true;
+			} else {
+				negative = false;
+			}
+		}
+	}
+	
+	/**
+	 * Finish the number being parsed, if any.
+	 */
+	private void endNumber() {
+		if (inNumber) {
+			add(negative ? -value : value);
+		}
+		
+		value = 0;
+		inNumber = false;
+		negative = false;
+	}
+	
+	/**
+	 * Add a value to the block, pushing the block into the estimator once it is full.
+	 * 
+	 * @param input  the value
+	 */
+	private void add(long input) {
+		block[blockSize++] = Math.min(Math.max(input, 0), range-1);
+		
+		if (blockSize == BLOCK_SIZE) {
+			flush();
+		}
+	}
+	
+	/**
+	 * Push the block into the estimator. The first non-empty block of the long engine also serves 
+	 * as the reservoir that places its tracers and grid.
+	 */
+	private void flush() {
+		if (sketch != null) {
+			for (int index = 0; index < blockSize; index++) {
+				intBlock[index] = (int) block[index];
+			}
+			
+			sketch.offer(intBlock, 0, blockSize);
+		} else {
+			if (!placed && blockSize > 0) {
+				long[] reservoir = Arrays.copyOf(block, blockSize);
+				Arrays.sort(reservoir);
+				shift = LongFloatingBuoy.getShift(percentile, reservoir, range);
+				tracers = LongFloatingBuoy.initializeTracers(percentile, numTracers, reservoir,
+						shift);
+				baseline = UniformDistributionFloatingBuoy.generateBaseline(tracers);
+				placed = true;
+			}
+			
+			for (int index = 0; index < blockSize; index++) {
+				LongFloatingBuoy.updateTracers(tracers, threshold, block[index], shift,
+						rand.nextInt() >>> 1);
+				
+				if (--untilPrune == 0) {
+					UniformDistributionFloatingBuoy.prune(tracers, baseline, numTracers);
+					untilPrune = pruneFrequency;
+				}
+			}
+		}
+		
+		count += blockSize;
+		blockSize = 0;
+	}
+	
+	/**
+	 * Generate all 101 buoys of the values ingested so far.
+	 * 
+	 * @return  the estimate for each percentile (from 0 to 100 percentile)
+	 */
+	public long[] buoys() {
+		if (sketch == null) {
+			return LongFloatingBuoy.linkBuoys(LongFloatingBuoy.getInitialLocations(tracers,
+					numTracers, range, shift));
+		}
+		
+		int[] intBuoys = sketch.buoys();
+		long[] allBuoys = new long[intBuoys.length];
+		
+		for (int index = 0; index < intBuoys.length; index++) {
+			allBuoys[index] = intBuoys[index];
+		}
+		
+		return allBuoys;
+	}
+	
+	/**
+	 * Get the number of values ingested so far.
+	 * 
+	 * @return  the count
+	 */
+	public long count() {
+		return count;
+	}
+	
+	/**
+	 * Main class.
+	 * 
+	 * @param args  the file, the format (int, long or text), the range, and optionally the
+	 *          number of groups, tracers per group and values between two prunes
+	 * @throws IOException  if the file cannot be mapped
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 3) {
+			System.err.println("Usage: FloatingBuoyFileIngest <file> <int|long|text> <range> "
+					+ "[numGroups] [numTracers] [pruneFrequency]");
+			System.exit(2);
+		}
+		
+		// Number of tracer groups (choose g s.t. 100 % g+1 = 0 and 0 < g <= 99)
+		int numGroups = args.length > 3 ? Integer.parseInt(args[3]) : 99;
+		
+		// Number of tracers per group (choose t >= 2)
+		int numTracers = args.length > 4 ? Integer.parseInt(args[4]) : 11;
+		
+		// Number of values between two prunes
+		int pruneFrequency = args.length > 5 ? Integer.parseInt(args[5]) : 10000;
+		
+		FloatingBuoyFileIngest ingest = new FloatingBuoyFileIngest(numGroups, numTracers,
+				Long.parseLong(args[2]), pruneFrequency);
+		long start = System.nanoTime();
+		ingest.ingest(Path.of(args[0]), args[1]);
+		long elapsed = System.nanoTime() - start;
+		
+		// Output the estimates
+		long[] allBuoys = ingest.buoys();
+		
+		for (int index = 0; index < allBuoys.length; index++) {
+			System.out.println(allBuoys[index]);
+		}
+		
+		System.out.println(ingest.count() + " values in " + elapsed / 1000000 + " ms.");
+	}
+}
\ No newline at end of file
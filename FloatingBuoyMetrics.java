@@ -0,0 +1,143 @@
+package floating_buoys;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Counters and gauges of a running estimator: inputs processed, tracer moves, prunes, groups 
+ * collapsed by a prune and the current error. The estimator accumulates its counts in locals and 
+ * publishes them once per batch of inputs, so the hot loop only runs the update. Readers pull 
+ * the values at any time, or start a reporter that formats them on a background thread.
+ * 
+ * @author Ruixin Yang
+ */
+public class FloatingBuoyMetrics {
+	
+	// Daemon thread shared by every reporter
+	private static final ScheduledExecutorService REPORTER =
+			Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "floating-buoy-metrics");
+				thread.setDaemon(true);
+				return thread;
+			});
+	
+	// Number of inputs processed
+	private final AtomicLong inputs = new AtomicLong();
+	
+	// Number of single tracer moves
+	private final AtomicLong moves = new AtomicLong();
+	
+	// Number of prunes
+	private final AtomicLong prunes = new AtomicLong();
+	
+	// Number of tracer groups collapsed onto a narrower interval by a prune
+	private final AtomicLong collapses = new AtomicLong();
+	
+	// Current error of the estimate, or NaN if unknown
+	private volatile double error = Double.NaN;
+	
+	/**
+	 * Publish a batch of inputs.
+	 * 
+	 * @param inputs  the number of inputs processed in the batch
+	 * @param moves  the number of tracer moves in the batch
+	 */
+	public void record(long inputs, long moves) {
+		this.inputs.addAndGet(inputs);
+		this.moves.addAndGet(moves);
+	}
+	
+	/**
+	 * Publish a prune.
+	 * 
+	 * @param collapsed  the number of tracer groups it collapsed
+	 */
+	public void recordPrune(int collapsed) {
+		prunes.incrementAndGet();
+		collapses.addAndGet(collapsed);
+	}
+	
+	/**
+	 * Publish the current error of the estimate.
+	 * 
+	 * @param error  the error, as a fraction
+	 */
+	public void setError(double error) {
+		this.error = error;
+	}
+	
+	/**
+	 * Get the number of inputs processed.
+	 * 
+	 * @return  the count
+	 */
+	public long inputs() {
+		return inputs.get();
+	}
+	
+	/**
+	 * Get the number of single tracer moves.
+	 * 
+	 * @return  the count
+	 */
+	public long moves() {
+		return moves.get();
+	}
+	
+	/**
+	 * Get the number of prunes.
+	 * 
+	 * @return  the count
+	 */
+	public long prunes() {
+		return prunes.get();
+	}
+	
+	/**
+	 * Get the number of tracer groups collapsed by a prune.
+	 * 
+	 * @return  the count
+	 */
+	public long collapses() {
+		return collapses.get();
+	}
+	
+	/**
+	 * Get the last published error of the estimate.
+	 * 
+	 * @return  the error, as a fraction, or NaN if none was published
+	 */
+	public double error() {
+		return error;
+	}
+	
+	/**
+	 * Emit the formatted metrics to a sink at a fixed interval, on a background daemon thread.
+	 * 
+	 * @param interval  the time between two reports
+	 * @param unit  the unit of the interval
+	 * @param sink  the consumer of each report
+	 * @return  the scheduled reporter, to be cancelled when no longer needed
+	 */
+	public ScheduledFuture<?> startReporter(long interval, TimeUnit unit, Consumer<String> sink) {
+		return REPORTER.scheduleAtFixedRate(() -> sink.accept(toString()), interval, interval,
+				unit);
+	}
+	
+	/**
+	 * Format the metrics on one line.
+	 * 
+	 * @return  the metrics
+	 */
+	@Override
+	public String toString() {
+		double current = error;
+		return "Inputs: " + inputs() + " Moves: " + moves() + " Prunes: " + prunes()
+				+ " Collapsed: " + collapses() + " Error: " + (Double.isNaN(current) ? "n/a"
+				: String.format("%.2f%%", 100 * current));
+	}
+}
\ No newline at end of file
@@ -0,0 +1,320 @@
+package floating_buoys;
+
+import java.util.SplittableRandom;
+
+/**
+ * Registry of floating buoy sketches keyed by long. Keys are kept in an open-addressing table of 
+ * primitive arrays, so looking up a key never boxes it. Evicted keys have their sketches reset 
+ * and reused for new keys. Eviction is incremental, so a new key costs a bounded amount of work: 
+ * a clock hand sweeps a few slots per new key for keys idle longer than the time-to-live, and 
+ * once the memory budget is reached, the least recently updated key among a window of slots 
+ * ahead of the hand is evicted. Once the pool has warmed up, lookup plus offer does not 
+ * allocate. Not thread-safe.
+ * 
+ * @author Ruixin Yang
+ */
+public class FloatingBuoyRegistry {
+	
+	// Number of slots the clock hand checks for idle keys on each new key
+	private static final int SWEEP_SLOTS = 8;
+	
+	// Number of slots sampled for the least recently updated key when the registry is full
+	private static final int SAMPLE_SLOTS = 32;
+	
+	// Key stored in each slot
+	private final long[] keys;
+	
+	// Sketch stored in each slot, or null if the slot is empty
+	private final FloatingBuoySketch[] sketches;
+	
+	// Time of the last offer to each slot, in System.nanoTime() units
+	private final long[] lastUpdate;
+	
+	// Evicted sketches, ready to be reset and reused
+	private final FloatingBuoySketch[] pool;
+	
+	// Number of sketches in the pool
+	private int pooled;
+	
+	// Number of keys in the registry
+	private int size;
+	
+	// Maximum number of keys, derived from the memory budget
+	private final int maxSize;
+	
+	// Time after which a key that has not been offered a value is evicted, in nanoseconds
+	private final long ttlNanos;
+	
+	// Number of tracer groups
+	private final int numGroups;
+	
+	// Number of tracers per group
+	private final int numTracers;
+	
+	// Input range (0, range-1)
+	private final int range;
+	
+	// Number of offers to a key between two prunes
+	private final int pruneFrequency;
+	
+	// Next slot visited by the clock hand
+	private int hand;
+	
+	/**
+	 * Construct a registry.
+	 * 
+	 * @param numGroups  number of tracer groups (choose g s.t. 100 % g+1 = 0 and 0 < g <= 99)
+	 * @param numTracers  number of tracers per group (choose t >= 2)
+	 * @param range  the maximum input value
+	 * @param pruneFrequency  number of offers to a key between two prunes
+	 * @param ttlNanos  time after which an idle key is evicted, in nanoseconds
+	 * @param memoryBudget  the maximum number of bytes to spend on sketches
+	 */
+	public FloatingBuoyRegistry(int numGroups, int numTracers, int range, int pruneFrequency,
+			long ttlNanos, long memoryBudget) {
+		this.numGroups = numGroups;
+		this.numTracers = numTracers;
+		this.range = range;
+		this.pruneFrequency = pruneFrequency;
+		this.ttlNanos = ttlNanos;
+		this.maxSize = (int) Math.max(1, Math.min(1 << 28,
+				memoryBudget / sketchSize(numGroups, numTracers)));
+		
+		// Keep the table at most half full so probe sequences stay short
+		int capacity = Integer.highestOneBit(maxSize) << 2;
+		this.keys = new long[capacity];
+		this.sketches = new FloatingBuoySketch[capacity];
+		this.lastUpdate = new long[capacity];
+		this.pool = new FloatingBuoySketch[maxSize];
+	}
+	
+	/**
+	 * Estimate the heap footprint of one sketch: its threshold, tracer and baseline arrays plus 
+	 * the array headers and the sketch object with its padding.
+	 * 
+	 * @param numGroups  number of tracer groups
+	 * @param numTracers  number of tracers per group
+	 * @return  the estimated size in bytes
+	 */
+	public static long sketchSize(int numGroups, int numTracers) {
+		return 3L * 4 * numGroups * numTracers + 3 * 16 + 208;
+	}
+	
+	/**
+	 * Push an input value into the sketch of a key, creating the sketch on first use.
+	 * 
+	 * @param key  the key
+	 * @param value  the input value
+	 */
+	public void offer(long key, int value) {
+		sketches[acquire(key)].offer(value);
+	}
+	
+	/**
+	 * Push a block of input values into the sketch of a key, creating the sketch on first use. 
+	 * The key is looked up once for the whole block.
+	 * 
+	 * @param key  the key
+	 * @param values  the input values
+	 * @param off  the index of the first value
+	 * @param len  the number of values
+	 */
+	public void offer(long key, int[] values, int off, int len) {
+		sketches[acquire(key)].offer(values, off, len);
+	}
+	
+	/**
+	 * Find the slot of a key, creating its sketch if it is not in the registry, and mark it as 
+	 * updated now.
+	 * 
+	 * @param key  the key
+	 * @return  the slot holding the key
+	 */
+	private int acquire(long key) {
+		long now = System.nanoTime();
+		int slot = find(key);
+		
+		if (sketches[slot] == null) {
+			sweep(now);
+			
+			if (size >= maxSize) {
+				evictSampled();
+			}
+			
+			// Removals shift entries back along their probe sequences
+			slot = find(key);
+			keys[slot] = key;
+			sketches[slot] = pooled > 0 ? pool[--pooled]
+					: new FloatingBuoySketch(numGroups, numTracers, range, pruneFrequency);
+			size++;
+		}
+		
+		lastUpdate[slot] = now;
+		return slot;
+	}
+	
+	/**
+	 * Get the sketch of a key.
+	 * 
+	 * @param key  the key
+	 * @return  the sketch, or null if the key is not in the registry
+	 */
+	public FloatingBuoySketch get(long key) {
+		return sketches[find(key)];
+	}
+	
+	/**
+	 * Get the number of keys in the registry.
+	 * 
+	 * @return  the number of keys
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Evict every key that has not been offered a value within the time-to-live. This scans the 
+	 * whole table, so it is meant for background maintenance; new keys only sweep a few slots.
+	 * 
+	 * @param now  the current time, in System.nanoTime() units
+	 * @return  the number of evicted keys
+	 */
+	public int evictIdle(long now) {
+		int evicted = 0;
+		
+		for (int slot = 0; slot < sketches.length; slot++) {
+			// Removal shifts later entries back into this slot, so check it again
+			while (sketches[slot] != null && now - lastUpdate[slot] > ttlNanos) {
+				remove(slot);
+				evicted++;
+			}
+		}
+		
+		return evicted;
+	}
+	
+	/**
+	 * Advance the clock hand over a fixed number of slots, evicting the keys it finds past their 
+	 * time-to-live, so idle keys are reclaimed incrementally as new keys arrive.
+	 * 
+	 * @param now  the current time, in System.nanoTime() units
+	 */
+	private void sweep(long now) {
+		int mask = keys.length-1;
+		
+		for (int visit = 0; visit < SWEEP_SLOTS; visit++) {
+			// Removal shifts a later entry back into this slot, so the hand stays to check it
+			if (sketches[hand] != null && now - lastUpdate[hand] > ttlNanos) {
+				remove(hand);
+			} else {
+				hand = (hand+1) & mask;
+			}
+		}
+	}
+	
+	/**
+	 * Evict the least recently updated key among those in the next slots of the clock hand, an 
+	 * approximation of the least recently updated key overall that touches a bounded window.
+	 */
+	private void evictSampled() {
+		int mask = keys.length-1;
+		int oldest = -1;
+		
+		for (int visit = 0; visit < SAMPLE_SLOTS || oldest < 0; visit++) {
+			if (sketches[hand] != null && (oldest < 0 || lastUpdate[hand] < lastUpdate[oldest])) {
+				oldest = hand;
+			}
+			
+			hand = (hand+1) & mask;
+		}
+		
+		remove(oldest);
+	}
+	
+	/**
+	 * Find the slot of a key by linear probing.
+	 * 
+	 * @param key  the key
+	 * @return  the slot holding the key, or the empty slot where it would be inserted
+	 */
+	private int find(long key) {
+		int mask = keys.length-1;
+		int slot = hash(key) & mask;
+		
+		while (sketches[slot] != null && keys[slot] != key) {
+			slot = (slot+1) & mask;
+		}
+		
+		return slot;
+	}
+	
+	/**
+	 * Remove the key in a slot, returning its sketch to the pool, and shift later entries of the 
+	 * probe sequence back so that no lookup stops early at the hole.
+	 * 
+	 * @param slot  the slot
+	 */
+	private void remove(int slot) {
+		int mask = keys.length-1;
+		FloatingBuoySketch sketch = sketches[slot];
+		sketch.reset();
+		pool[pooled++] = sketch;
+		sketches[slot] = null;
+		size--;
+		
+		for (int next = (slot+1) & mask; sketches[next] != null; next = (next+1) & mask) {
+			int home = hash(keys[next]) & mask;
+			
+			// Move the entry if the hole lies cyclically between its home slot and its slot
+			if (((next - home) & mask) >= ((next - slot) & mask)) {
+				keys[slot] = keys[next];
+				sketches[slot] = sketches[next];
+				lastUpdate[slot] = lastUpdate[next];
+				sketches[next] = null;
+				slot = next;
+			}
+		}
+	}
+	
+	/**
+	 * Spread the bits of a key over the low bits used to pick a slot.
+	 * 
+	 * @param key  the key
+	 * @return  the hash
+	 */
+	private static int hash(long key) {
+		long mixed = key * 0x9E3779B97F4A7C15L;
+		return (int) (mixed ^ (mixed >>> 32));
+	}
+	
+	/**
+	 * Main class.
+	 * 
+	 * @param args  no arguments necessary
+	 */
+	public static void main(String[] args) {
+		// Input range (0, range-1)
+		int range = 1000000;
+		
+		// A 4 MB memory budget
+		long budget = 4L << 20;
+		
+		// Number of distinct keys, four times as many as fit in the memory budget
+		int numKeys = (int) (4 * budget / sketchSize(4, 11));
+		
+		// Number of input values
+		int inputSize = 10000000;
+		
+		// One second time-to-live
+		FloatingBuoyRegistry registry = new FloatingBuoyRegistry(4, 11, range, 1000, 1000000000L,
+				budget);
+		SplittableRandom input = new SplittableRandom();
+		
+		for (int iter = 0; iter < inputSize; iter++) {
+			registry.offer(input.nextInt(numKeys), input.nextInt(range));
+		}
+		
+		System.out.println(registry.size() + " of " + numKeys + " keys, p50 of key 0: "
+				+ (registry.get(0) == null ? "evicted" : registry.get(0).quantile(0.5)));
+	}
+}
\ No newline at end of file
@@ -0,0 +1,442 @@
+package floating_buoys;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Local ingestion and query server, so that processes in other languages can share one 
+ * estimator. It listens on the loopback interface only and speaks a binary protocol over NIO 
+ * channels, in network byte order. Every request starts with an opcode and a long key: 
+ * <ul> 
+ * <li>{@link #OFFER}, an int count and that many int values: pushes the values into the sketch 
+ * of the key, clamped to [0, range), with no response, so batches can be pipelined;</li> 
+ * <li>{@link #QUANTILE} and a double p: responds with the int estimate of that quantile, or -1 
+ * if the key is unknown;</li> 
+ * <li>{@link #BUOYS}: responds with an int count, 101 or 0 if the key is unknown, and the 
+ * buoys.</li> 
+ * </ul> 
+ * Responses are buffered and flushed whenever the server waits for more input. Each connection 
+ * is served by its own thread, a virtual thread when the runtime has them (JDK 21+), and keys 
+ * are spread over several {@link FloatingBuoyRegistry} stripes with one lock each, taken once 
+ * per batch.
+ * 
+ * @author Ruixin Yang
+ */
+public class FloatingBuoyServer implements AutoCloseable {
+	
+	// Opcodes of the requests
+	public static final byte OFFER = 1;
+	public static final byte QUANTILE = 2;
+	public static final byte BUOYS = 3;
+	
+	// Maximum number of values in one offer
+	public static final int MAX_BATCH = 16384;
+	
+	// Size of the input buffer of a connection: the largest offer with its header
+	private static final int INPUT_SIZE = 1 + 8 + 4 + 4 * MAX_BATCH;
+	
+	// Size of the output buffer of a connection
+	private static final int OUTPUT_SIZE = 1 << 16;
+	
+	// Size of the largest response: the buoys and their count
+	private static final int MAX_RESPONSE = 4 + 4 * 101;
+	
+	// Pause after a failed accept, so a lasting failure does not spin the acceptor
+	private static final long ACCEPT_RETRY_MILLIS = 100;
+	
+	// Registries the keys are spread over, each guarded by its own monitor
+	private final FloatingBuoyRegistry[] stripes;
+	
+	// Listening channel, bound to the loopback interface
+	private final ServerSocketChannel server;
+	
+	// Threads serving the connections
+	private final ExecutorService connections;
+	
+	// Thread accepting the connections
+	private final Thread acceptor;
+	
+	/**
+	 * Start a server.
+	 * 
+	 * @param port  the port to listen on, or 0 for any free port
+	 * @param numStripes  number of registries the keys are spread over
+	 * @param numGroups  number of tracer groups (choose g s.t. 100 % g+1 = 0 and 0 < g <= 99)
+	 * @param numTracers  number of tracers per group (choose t >= 2)
+	 * @param range  the maximum input value
+	 * @param pruneFrequency  number of offers to a key between two prunes
+	 * @param ttlNanos  time after which an idle key is evicted, in nanoseconds
+	 * @param memoryBudget  the maximum number of bytes to spend on sketches, over all stripes
+	 * @throws IOException  if the port cannot be bound
+	 */
+	public FloatingBuoyServer(int port, int numStripes, int numGroups, int numTracers, int range,
+			int pruneFrequency, long ttlNanos, long memoryBudget) throws IOException {
+		this.stripes = new FloatingBuoyRegistry[numStripes];
+		
+		for (int stripe = 0; stripe < numStripes; stripe++) {
+			stripes[stripe] = new FloatingBuoyRegistry(numGroups, numTracers, range,
+					pruneFrequency, ttlNanos, memoryBudget / numStripes);
+		}
+		
+		this.server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+		this.connections = newConnectionExecutor();
+		this.acceptor = new Thread(this::accept, "floating-buoy-server");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+	
+	/**
+	 * Create the executor serving the connections: one virtual thread per task when the runtime 
+	 * supports it, looked up reflectively so the sources still build on JDK 17, and otherwise a 
+	 * cached pool of daemon platform threads.
+	 * 
+	 * @return  the executor
+	 */
+	private static ExecutorService newConnectionExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+					.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool(runnable -> {
+				Thread thread = new Thread(runnable, "floating-buoy-connection");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+	
+	/**
+	 * Get the port the server listens on.
+	 * 
+	 * @return  the port
+	 * @throws IOException  if the server is closed
+	 */
+	public int port() throws IOException {
+		return ((InetSocketAddress) server.getLocalAddress()).getPort();
+	}
+	
+	/**
+	 * Accept connections until the server is closed. Other failures, such as running out of file 
+	 * descriptors, are logged and accepting resumes after a short pause.
+	 */
+	private void accept() {
+		while (true) {
+			SocketChannel channel;
+			
+			try {
+				channel = server.accept();
+			} catch (ClosedChannelException e) {
+				return;
+			} catch (IOException e) {
+				System.err.println("Accept failed, retrying: " + e);
+				
+				try {
+					Thread.sleep(ACCEPT_RETRY_MILLIS);
+				} catch (InterruptedException interrupted) {
+					return;
+				}
+				
+				continue;
+			}
+			
+			connections.execute(() -> serve(channel));
+		}
+	}
+	
+	/**
+	 * Serve the requests of one connection until the client closes it or sends a malformed 
+	 * request.
+	 * 
+	 * @param channel  the connection
+	 */
+	private void serve(SocketChannel channel) {
+		ByteBuffer in = ByteBuffer.allocateDirect(INPUT_SIZE);
+		ByteBuffer out = ByteBuffer.allocateDirect(OUTPUT_SIZE);
+		int[] values = new int[MAX_BATCH];
+		in.limit(0);
+		
+		try (channel) {
+			channel.socket().setTcpNoDelay(true);
+			
+			while (require(channel, in, out, 1 + 8)) {
+				byte opcode = in.get();
+				long key = in.getLong();
+				FloatingBuoyRegistry registry = stripes[stripe(key)];
+				
+				if (opcode == OFFER) {
+					int count = require(channel, in, out, 4) ? in.getInt() : -1;
+					
+					if (count < 0 || count > MAX_BATCH || !require(channel, in, out, 4 * count)) {
+						return;
+					}
+					
+					in.asIntBuffer().get(values, 0, count);
+					in.position(in.position() + 4 * count);
+					
+					synchronized (registry) {
+						registry.offer(key, values, 0, count);
+					}
+				} else if (opcode == QUANTILE) {
+					if (!require(channel, in, out, 8)) {
+						return;
+					}
+					
+					double p = in.getDouble();
+					int estimate;
+					
+					synchronized (registry) {
+						FloatingBuoySketch sketch = registry.get(key);
+						estimate = sketch == null ? -1 : sketch.quantile(p);
+					}
+					
+					reserve(channel, out, 4);
+					out.putInt(estimate);
+				} else if (opcode == BUOYS) {
+					int[] allBuoys;
+					
+					synchronized (registry) {
+						FloatingBuoySketch sketch = registry.get(key);
+						allBuoys = sketch == null ? new int[0] : sketch.buoys();
+					}
+					
+					reserve(channel, out, MAX_RESPONSE);
+					out.putInt(allBuoys.length);
+					
+					for (int buoy : allBuoys) {
+						out.putInt(buoy);
+					}
+				} else {
+					return;
+				}
+			}
+			
+			flush(channel, out);
+		} catch (IOException e) {
+			// The client went away; its sketches stay in the registry
+		}
+	}
+	
+	/**
+	 * Make sure the input buffer holds at least the given number of bytes, flushing the pending 
+	 * responses before blocking on a read.
+	 * 
+	 * @param channel  the connection
+	 * @param in  the input buffer, ready for reading
+	 * @param out  the output buffer, ready for writing
+	 * @param bytes  the number of bytes needed
+	 * @return  true if the bytes are available, false if the client closed the connection
+	 *          between requests
+	 * @throws IOException  if the connection fails or is closed in the middle of a request
+	 */
+	private static boolean require(SocketChannel channel, ByteBuffer in, ByteBuffer out,
+			int bytes) throws IOException {
+		if (in.remaining() >= bytes) {
+			return true;
+		}
+		
+		flush(channel, out);
+		in.compact();
+		
+		while (in.position() < bytes) {
+			if (channel.read(in) < 0) {
+				if (in.position() == 0) {
+					return false;
+				}
+				
+				throw new EOFException("Connection closed in the middle of a request");
+			}
+		}
+		
+		in.flip();
+		return true;
+	}
+	
+	/**
+	 * Make room in the output buffer, flushing it if necessary.
+	 * 
+	 * @param channel  the connection
+	 * @param out  the output buffer, ready for writing
+	 * @param bytes  the number of bytes about to be written
+	 * @throws IOException  if the connection fails
+	 */
+	private static void reserve(SocketChannel channel, ByteBuffer out, int bytes)
+			throws IOException {
+		if (out.remaining() < bytes) {
+			flush(channel, out);
+		}
+	}
+	
+	/**
+	 * Write every pending response.
+	 * 
+	 * @param channel  the connection
+	 * @param out  the output buffer, ready for writing
+	 * @throws IOException  if the connection fails
+	 */
+	private static void flush(SocketChannel channel, ByteBuffer out) throws IOException {
+		out.flip();
+		
+		while (out.hasRemaining()) {
+			channel.write(out);
+		}
+		
+		out.clear();
+	}
+	
+	/**
+	 * Get the stripe of a key.
+	 * 
+	 * @param key  the key
+	 * @return  the index of the registry holding the key
+	 */
+	private int stripe(long key) {
+		long mixed = key * 0x9E3779B97F4A7C15L;
+		return (int) ((mixed >>> 32) % stripes.length);
+	}
+	
+	/**
+	 * Stop accepting connections. Connections already open are served until their clients close 
+	 * them.
+	 * 
+	 * @throws IOException  if the listening channel cannot be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		server.close();
+		connections.shutdown();
+	}
+	
+	/**
+	 * Main class: start a server and drive it from local clients.
+	 * 
+	 * @param args  no arguments necessary
+	 * @throws Exception  if the server cannot be started or a client fails
+	 */
+	public static void main(String[] args) throws Exception {
+		// Input range (0, range-1)
+		int range = 1000000;
+		
+		// Number of concurrent clients, each with its own connection
+		int numClients = 8;
+		
+		// Number of batches sent by each client
+		int numBatches = 200000;
+		
+		// Number of values in each batch
+		int batchSize = 64;
+		
+		// Number of distinct keys
+		int numKeys = 1000;
+		
+		try (FloatingBuoyServer server = new FloatingBuoyServer(0, 16, 4, 11, range, 1000,
+				60000000000L, 64L << 20)) {
+			CountDownLatch done = new CountDownLatch(numClients);
+			long start = System.nanoTime();
+			
+			for (int client = 0; client < numClients; client++) {
+				int seed = client;
+				Thread thread = new Thread(() -> {
+					try {
+						runClient(server.port(), seed, numBatches, batchSize, numKeys, range);
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+					
+					done.countDown();
+				});
+				thread.start();
+			}
+			
+			done.await();
+			long elapsed = System.nanoTime() - start;
+			System.out.println(numClients * (long) numBatches * 1000000000L / elapsed
+					+ " batches per second.");
+			
+			// Query the buoys of one key over a fresh connection
+			try (SocketChannel channel = SocketChannel.open(new InetSocketAddress(
+					InetAddress.getLoopbackAddress(), server.port()))) {
+				ByteBuffer request = ByteBuffer.allocate(1 + 8).put(BUOYS).putLong(0).flip();
+				
+				while (request.hasRemaining()) {
+					channel.write(request);
+				}
+				
+				ByteBuffer response = read(channel, 4);
+				int count = response.getInt();
+				response = read(channel, 4 * count);
+				
+				for (int index = 0; index < count; index++) {
+					System.out.println(response.getInt());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Send pipelined offers of uniform values to random keys, then wait for the response to a 
+	 * quantile query so that every offer has been applied.
+	 * 
+	 * @param port  the port of the server
+	 * @param seed  the seed of the values
+	 * @param numBatches  the number of batches to send
+	 * @param batchSize  the number of values in each batch
+	 * @param numKeys  the number of distinct keys
+	 * @param range  the maximum input value
+	 * @throws IOException  if the connection fails
+	 */
+	private static void runClient(int port, long seed, int numBatches, int batchSize,
+			int numKeys, int range) throws IOException {
+		SplittableRandom input = new SplittableRandom(seed);
+		ByteBuffer request = ByteBuffer.allocateDirect(1 << 16);
+		
+		try (SocketChannel channel = SocketChannel.open(new InetSocketAddress(
+				InetAddress.getLoopbackAddress(), port))) {
+			for (int batch = 0; batch < numBatches; batch++) {
+				if (request.remaining() < 1 + 8 + 4 + 4 * batchSize) {
+					flush(channel, request);
+				}
+				
+				request.put(OFFER).putLong(input.nextInt(numKeys)).putInt(batchSize);
+				
+				for (int index = 0; index < batchSize; index++) {
+					request.putInt(input.nextInt(range));
+				}
+			}
+			
+			request.put(QUANTILE).putLong(0).putDouble(0.5);
+			flush(channel, request);
+			read(channel, 4);
+		}
+	}
+	
+	/**
+	 * Read an exact number of bytes from a channel.
+	 * 
+	 * @param channel  the connection
+	 * @param bytes  the number of bytes
+	 * @return  the bytes, ready for reading
+	 * @throws IOException  if the connection fails or closes early
+	 */
+	private static ByteBuffer read(SocketChannel channel, int bytes) throws IOException {
+		ByteBuffer response = ByteBuffer.allocate(bytes);
+		
+		while (response.hasRemaining()) {
+			if (channel.read(response) < 0) {
+				throw new EOFException("Connection closed before the response");
+			}
+		}
+		
+		return response.flip();
+	}
+}
\ No newline at end of file
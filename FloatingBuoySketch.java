@@ -0,0 +1,1160 @@
+package floating_buoys;
+
+import java.lang.invoke.VarHandle;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Streaming floating buoy sketch. Input values are pushed into the sketch one at a time instead 
+ * of being drawn from a sample distribution, and the tracer groups are pruned incrementally every 
+ * fixed number of offers. A sketch has a single writer, but any number of threads may read its 
+ * buoys while it is being offered values. Prunes, resets and merges rewrite whole groups, so 
+ * they are bracketed by a sequence counter: readers copy the locations they need and retry if a 
+ * rewrite ran meanwhile, and the writer never waits for them. Between rewrites, each update 
+ * moves single tracers by one step, which a reader sees as an estimate at most one update old.
+ * 
+ * @author Ruixin Yang
+ */
+public class FloatingBuoySketch extends SketchPadding {
+	
+	// Version of the binary encoding
+	private static final byte VERSION = 2;
+	
+	// Number of linked buoys in the binary encoding (from 0 to 100 percentile)
+	private static final int NUM_BUOYS = 101;
+	
+	// Increment of the splitmix generator, as in SplittableRandom
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+	
+	// State of the splitmix generator behind the update thresholds, kept in the sketch itself so 
+	// that drawing one writes no other object
+	private long seed;
+	
+	// Update threshold of each tracer, scaled to [0, 2^31) from the target percentile of its group
+	private final int[] threshold;
+	
+	// Tracer groups, flattened with a stride of numTracers
+	private final int[] tracers;
+	
+	// Baseline copy of the tracers, refreshed in place after every prune
+	private final int[] baseline;
+	
+	// Number of tracer groups
+	private final int numGroups;
+	
+	// Number of tracers per group
+	private final int numTracers;
+	
+	// Input range (0, range-1)
+	private final int range;
+	
+	// Number of offers between two prunes
+	private final int pruneFrequency;
+	
+	// Number of offers left until the next prune
+	private int untilPrune;
+	
+	// Number of values offered so far
+	private long count;
+	
+	// Smallest and largest value offered since the last reset, the ends of its CDF in a merge
+	private int minimum;
+	private int maximum;
+	
+	// Knots of the sketches merged into this one since the last reset, or null
+	private Knots merged;
+	
+	// Sequence counter, odd while a prune, reset or merge is rewriting the tracers
+	private volatile int version;
+	
+	/**
+	 * Construct a sketch with tracer groups evenly spaced from 0 to range.
+	 * 
+	 * @param numGroups  number of tracer groups (choose g s.t. 100 % g+1 = 0 and 0 < g <= 99)
+	 * @param numTracers  number of tracers per group (choose t >= 2)
+	 * @param range  the maximum input value
+	 * @param pruneFrequency  number of offers between two prunes
+	 */
+	public FloatingBuoySketch(int numGroups, int numTracers, int range, int pruneFrequency) {
+		this(numGroups, numTracers, range, pruneFrequency, new SplittableRandom().nextLong());
+	}
+	
+	/**
+	 * Construct a sketch with tracer groups evenly spaced from 0 to range and a fixed seed.
+	 * 
+	 * @param numGroups  number of tracer groups (choose g s.t. 100 % g+1 = 0 and 0 < g <= 99)
+	 * @param numTracers  number of tracers per group (choose t >= 2)
+	 * @param range  the maximum input value
+	 * @param pruneFrequency  number of offers between two prunes
+	 * @param seed  the seed for the update thresholds
+	 */
+	public FloatingBuoySketch(int numGroups, int numTracers, int range, int pruneFrequency,
+			long seed) {
+		this.seed = seed;
+		this.numGroups = numGroups;
+		this.numTracers = numTracers;
+		this.threshold = UniformDistributionFloatingBuoy.getThresholds(
+				UniformDistributionFloatingBuoy.getPercentiles(numGroups), numTracers);
+		this.tracers = UniformDistributionFloatingBuoy.initializeTracers(numGroups, numTracers, 
+				range);
+		this.baseline = UniformDistributionFloatingBuoy.generateBaseline(tracers);
+		this.range = range;
+		this.pruneFrequency = pruneFrequency;
+		this.untilPrune = pruneFrequency;
+		this.minimum = range-1;
+		this.maximum = 0;
+	}
+	
+	/**
+	 * Push a single input value through every tracer group, pruning if the prune frequency has 
+	 * been reached. The update kernel requires inputs in [0, range), so values outside it are 
+	 * clamped to the nearest bound. Does not allocate.
+	 * 
+	 * @param value  the input value
+	 */
+	public void offer(int value) {
+		value = clamp(value);
+		minimum = Math.min(minimum, value);
+		maximum = Math.max(maximum, value);
+		UniformDistributionFloatingBuoy.updateTracers(tracers, threshold, value, 
+				nextThreshold());
+		count++;
+		
+		if (--untilPrune == 0) {
+			prune();
+		}
+	}
+	
+	/**
+	 * Push a block of input values through every tracer group, pruning whenever the prune 
+	 * frequency is reached. Produces the same tracers as offering each value in turn, including 
+	 * the clamping of values outside [0, range). Does not allocate.
+	 * 
+	 * @param values  the input values
+	 * @param off  the index of the first value
+	 * @param len  the number of values
+	 */
+	public void offer(int[] values, int off, int len) {
+		int end = off + len;
+		
+		while (off < end) {
+			int chunk = Math.min(end - off, untilPrune);
+			
+			for (int iter = off; iter < off + chunk; iter++) {
+				int value = clamp(values[iter]);
+				minimum = Math.min(minimum, value);
+				maximum = Math.max(maximum, value);
+				UniformDistributionFloatingBuoy.updateTracers(tracers, threshold, value, 
+						nextThreshold());
+			}
+			
+			off += chunk;
+			count += chunk;
+			untilPrune -= chunk;
+			
+			if (untilPrune == 0) {
+				prune();
+			}
+		}
+	}
+	
+	/**
+	 * Draw the next update threshold, in [0, 2^31). The generator is that of SplittableRandom, so 
+	 * a seeded sketch draws the same thresholds as SplittableRandom.nextInt() >>> 1 would.
+	 * 
+	 * @return  the random draw
+	 */
+	private int nextThreshold() {
+		long z = seed += GOLDEN_GAMMA;
+		z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+		return (int) (((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32) >>> 1;
+	}
+	
+	/**
+	 * Clamp an input value to [0, range-1]. Larger values would drive tracers past the range, and 
+	 * values near Integer.MIN_VALUE would overflow the sign of tracer - input.
+	 * 
+	 * @param value  the input value
+	 * @return  the value within the range
+	 */
+	private int clamp(int value) {
+		return Math.min(Math.max(value, 0), range-1);
+	}
+	
+	/**
+	 * Prune the tracers that are far from the actual percentile, repartition, and refresh the 
+	 * baseline in place.
+	 */
+	public void prune() {
+		beginWrite();
+		UniformDistributionFloatingBuoy.prune(tracers, baseline, numTracers);
+		endWrite();
+		untilPrune = pruneFrequency;
+	}
+	
+	/**
+	 * Forget every offered value and return the tracer groups to their initial, evenly spaced 
+	 * locations, so the sketch can be reused. Does not allocate.
+	 */
+	public void reset() {
+		beginWrite();
+		
+		for (int estimator = 0; estimator < tracers.length; estimator++) {
+			tracers[estimator] = (estimator % numTracers) * (range / (numTracers-1));
+		}
+		
+		System.arraycopy(tracers, 0, baseline, 0, tracers.length);
+		merged = null;
+		endWrite();
+		untilPrune = pruneFrequency;
+		count = 0;
+		minimum = range-1;
+		maximum = 0;
+	}
+	
+	/**
+	 * Forget every offered value and start the tracer groups from the locations of another 
+	 * sketch instead of spacing them evenly, so a fresh sketch over a stream that has not shifted 
+	 * is accurate from its first offers. Does not allocate.
+	 * 
+	 * @param start  the sketch to copy the tracers from, with the same groups, tracers and range
+	 */
+	public void reset(FloatingBuoySketch start) {
+		checkCompatible(start);
+		beginWrite();
+		System.arraycopy(start.tracers, 0, tracers, 0, tracers.length);
+		System.arraycopy(start.tracers, 0, baseline, 0, tracers.length);
+		merged = null;
+		endWrite();
+		untilPrune = pruneFrequency;
+		count = 0;
+		minimum = range-1;
+		maximum = 0;
+	}
+	
+	/**
+	 * Piecewise-linear CDF of the sketches merged into this one, fixed once built. A jump is 
+	 * stored as two knots at the same value, the fraction below it and then the fraction at or 
+	 * below it, so a mixture of such CDFs is represented exactly.
+	 */
+	private static final class Knots {
+		
+		// Values of the knots, non-decreasing
+		final int[] values;
+		
+		// Fraction of the merged values at or below each knot, non-decreasing to 1
+		final double[] fractions;
+		
+		// Number of values the knots stand for
+		final long count;
+		
+		Knots(int[] values, double[] fractions, long count) {
+			this.values = values;
+			this.fractions = fractions;
+			this.count = count;
+		}
+		
+		/**
+		 * Evaluate the CDF at a value.
+		 * 
+		 * @param value  the value
+		 * @return  the fraction of the merged values at or below the value
+		 */
+		double at(int value) {
+			// Largest knot at or below the value, so the next knot lies strictly above it
+			int low = -1;
+			int high = values.length-1;
+			
+			while (low < high) {
+				int mid = (low+high+1) / 2;
+				
+				if (values[mid] <= value) {
+					low = mid;
+				} else {
+					high = mid-1;
+				}
+			}
+			
+			if (low < 0) {
+				return 0;
+			} else if (low == values.length-1) {
+				return fractions[low];
+			}
+			
+			return fractions[low] + (fractions[low+1] - fractions[low]) 
+					* (value - values[low]) / (values[low+1] - values[low]);
+		}
+		
+		/**
+		 * Evaluate the CDF just below a value, before any jump at the value itself.
+		 * 
+		 * @param value  the value
+		 * @return  the fraction of the merged values below the value
+		 */
+		double below(int value) {
+			// Smallest knot at or above the value, so the previous knot lies strictly below it
+			int low = 0;
+			int high = values.length;
+			
+			while (low < high) {
+				int mid = (low+high) / 2;
+				
+				if (values[mid] >= value) {
+					high = mid;
+				} else {
+					low = mid+1;
+				}
+			}
+			
+			if (low == 0) {
+				return 0;
+			} else if (low == values.length) {
+				return fractions[low-1];
+			} else if (values[low] == value) {
+				return fractions[low];
+			}
+			
+			return fractions[low-1] + (fractions[low] - fractions[low-1]) 
+					* (value - values[low-1]) / (values[low] - values[low-1]);
+		}
+	}
+	
+	/**
+	 * Merge another sketch into this one, so that it estimates the quantiles of both streams 
+	 * together. The buoys of the other sketch are read as a piecewise-linear CDF, from the 
+	 * smallest value it was offered through the estimate of every group at its target percentile 
+	 * to the largest, and mixed with the knots 
+	 * this sketch has already merged, in proportion to the number of values behind each. Every 
+	 * knot is kept, so the mixture is never compressed back to one knot per group, and the 
+	 * estimates invert the mixture of that CDF and the one through the tracers of this sketch, 
+	 * which go on following the values offered to it. Merging is therefore commutative and 
+	 * associative up to floating-point rounding, so sketches can be combined in any tree 
+	 * reduction. The cost is memory: every merged sketch adds up to two knots per group until 
+	 * the next reset.
+	 * 
+	 * @param other  the sketch to merge, with the same number of groups, tracers and range
+	 * @return  this sketch
+	 */
+	public FloatingBuoySketch merge(FloatingBuoySketch other) {
+		return merge(other, 1);
+	}
+	
+	/**
+	 * Merge another sketch into this one as if it had seen weight times as many values, so older 
+	 * sketches can be discounted. The merged count grows by the rounded weighted count.
+	 * 
+	 * @param other  the sketch to merge, with the same number of groups, tracers and range
+	 * @param weight  the factor applied to the count of the other sketch, in [0, 1]
+	 * @return  this sketch
+	 */
+	public FloatingBuoySketch merge(FloatingBuoySketch other, double weight) {
+		checkCompatible(other);
+		
+		// CDFs to mix: the knots of this sketch, the tracers of the other and its knots
+		Knots otherMerged = other.merged;
+		long otherMergedCount = otherMerged == null ? 0 : otherMerged.count;
+		Knots[] parts = {merged, other.ownKnots(), otherMerged};
+		long[] counts = {merged == null ? 0 : merged.count, 
+				Math.round(weight * (other.count - otherMergedCount)), 
+				Math.round(weight * otherMergedCount)};
+		
+		if (counts[1] + counts[2] == 0) {
+			return this;
+		}
+		
+		Knots mixture = mix(parts, counts);
+		beginWrite();
+		merged = mixture;
+		endWrite();
+		count += counts[1] + counts[2];
+		return this;
+	}
+	
+	/**
+	 * Get the piecewise-linear CDF through the tracers of this sketch alone: the smallest value 
+	 * offered, the middle tracer of each group, then the largest value offered, made 
+	 * non-decreasing, the knot at index i standing for percentile i / (numGroups+1).
+	 * 
+	 * @return  the knots, standing for the values offered since the last reset
+	 */
+	private Knots ownKnots() {
+		int[] values = new int[numGroups+2];
+		double[] fractions = new double[numGroups+2];
+		long own;
+		int read;
+		
+		do {
+			read = beginRead();
+			own = count - (merged == null ? 0 : merged.count);
+			
+			for (int index = 0; index < values.length; index++) {
+				values[index] = knot(index);
+			}
+		} while (!validate(read));
+		
+		for (int index = 0; index < values.length; index++) {
+			values[index] = index == 0 ? values[0] : Math.max(values[index], values[index-1]);
+			fractions[index] = (double) index / (numGroups+1);
+		}
+		
+		return new Knots(values, fractions, own);
+	}
+	
+	/**
+	 * Mix piecewise-linear CDFs in proportion to their counts. The mixture is linear between 
+	 * the values of all their knots, so evaluating it just below and at each of them is exact.
+	 * 
+	 * @param parts  the CDFs, null entries skipped
+	 * @param counts  the number of values behind each CDF
+	 * @return  the mixture, standing for the sum of the counts
+	 */
+	private static Knots mix(Knots[] parts, long[] counts) {
+		long total = 0;
+		int size = 0;
+		
+		for (int part = 0; part < parts.length; part++) {
+			if (parts[part] != null && counts[part] > 0) {
+				total += counts[part];
+				size += parts[part].values.length;
+			}
+		}
+		
+		int[] union = new int[size];
+		size = 0;
+		
+		for (int part = 0; part < parts.length; part++) {
+			if (parts[part] != null && counts[part] > 0) {
+				System.arraycopy(parts[part].values, 0, union, size, parts[part].values.length);
+				size += parts[part].values.length;
+			}
+		}
+		
+		Arrays.sort(union);
+		int[] values = new int[2 * size];
+		double[] fractions = new double[2 * size];
+		int knots = 0;
+		
+		for (int index = 0; index < size; index++) {
+			if (index > 0 && union[index] == union[index-1]) {
+				continue;
+			}
+			
+			double below = 0;
+			double at = 0;
+			
+			for (int part = 0; part < parts.length; part++) {
+				if (parts[part] != null && counts[part] > 0) {
+					double share = (double) counts[part] / total;
+					below += share * parts[part].below(union[index]);
+					at += share * parts[part].at(union[index]);
+				}
+			}
+			
+			values[knots] = union[index];
+			fractions[knots++] = Math.min(below, 1);
+			
+			if (at != below) {
+				values[knots] = union[index];
+				fractions[knots++] = Math.min(at, 1);
+			}
+		}
+		
+		// Every part reaches 1 at its last knot, whatever the rounding of the shares
+		fractions[knots-1] = 1;
+		return new Knots(Arrays.copyOf(values, knots), Arrays.copyOf(fractions, knots), total);
+	}
+	
+	/**
+	 * Find the smallest value at which the mixture of the CDF through the tracers of this sketch 
+	 * and that of the merged knots reaches a target percentile, by bisection over the range.
+	 * 
+	 * @param knots  the merged knots
+	 * @param target  the target percentile, in (0, 1)
+	 * @return  the value
+	 */
+	private int invert(Knots knots, double target) {
+		double share = count == 0 ? 1 : Math.min(1, (double) knots.count / count);
+		int low = 0;
+		int high = range-1;
+		
+		while (low < high) {
+			int mid = low + (high-low) / 2;
+			
+			if ((1-share) * ownCdf(mid) + share * knots.at(mid) >= target) {
+				high = mid;
+			} else {
+				low = mid+1;
+			}
+		}
+		
+		return low;
+	}
+	
+	/**
+	 * Evaluate the piecewise-linear CDF through the tracers of this sketch alone, as built by 
+	 * {@link #ownKnots}, without allocating.
+	 * 
+	 * @param value  the value
+	 * @return  the fraction of the values offered to this sketch at or below the value
+	 */
+	private double ownCdf(int value) {
+		int last = numGroups+1;
+		
+		// Largest knot at or below the value, scanning the knots made non-decreasing
+		int low = 0;
+		int knot = knot(0);
+		int next = knot;
+		
+		if (value < knot) {
+			return 0;
+		}
+		
+		while (low < last) {
+			next = Math.max(knot(low+1), knot);
+			
+			if (next > value) {
+				break;
+			}
+			
+			low++;
+			knot = next;
+		}
+		
+		if (low == last) {
+			return 1;
+		}
+		
+		return (low + (double) (value - knot) / (next - knot)) / last;
+	}
+	
+	/**
+	 * Check that another sketch has the same number of groups, tracers and range.
+	 * 
+	 * @param other  the other sketch
+	 */
+	private void checkCompatible(FloatingBuoySketch other) {
+		if (other.numGroups != numGroups || other.numTracers != numTracers 
+				|| other.range != range) {
+			throw new IllegalArgumentException("Cannot combine sketches with different groups, "
+					+ "tracers or range");
+		}
+	}
+	
+	/**
+	 * Get the current initial buoy locations, bracketed by 0 and range-1 as returned by 
+	 * {@link UniformDistributionFloatingBuoy#cast}.
+	 * 
+	 * @return  the estimate of each tracer group, with the minimum and maximum at either end
+	 */
+	public int[] initialLocations() {
+		int[] output = new int[numGroups+2];
+		int read;
+		
+		do {
+			read = beginRead();
+			
+			for (int index = 0; index < output.length; index++) {
+				output[index] = location(index);
+			}
+		} while (!validate(read));
+		
+		return output;
+	}
+	
+	/**
+	 * Generate all 101 buoys from the current estimates.
+	 * 
+	 * @return  the estimate for each percentile (from 0 to 100 percentile)
+	 */
+	public int[] buoys() {
+		return UniformDistributionFloatingBuoy.linkBuoys(initialLocations());
+	}
+	
+	/**
+	 * Estimate an arbitrary quantile by interpolating between the two nearest tracer groups.
+	 * 
+	 * @param p  the quantile, in [0, 1]
+	 * @return  the estimate
+	 */
+	public int quantile(double p) {
+		int read;
+		int estimate;
+		
+		do {
+			read = beginRead();
+			estimate = interpolate(p * (numGroups+1));
+		} while (!validate(read));
+		
+		return estimate;
+	}
+	
+	/**
+	 * Copy the tracer groups, baseline, merged knots and count into a new sketch, consistently 
+	 * even while another thread is offering values to this one.
+	 * 
+	 * @return  the copy, with update thresholds drawn from a fresh random seed
+	 */
+	public FloatingBuoySketch snapshot() {
+		FloatingBuoySketch copy = new FloatingBuoySketch(numGroups, numTracers, range, 
+				pruneFrequency);
+		int read;
+		
+		do {
+			read = beginRead();
+			System.arraycopy(tracers, 0, copy.tracers, 0, tracers.length);
+			System.arraycopy(baseline, 0, copy.baseline, 0, baseline.length);
+			copy.merged = merged;
+			copy.count = count;
+			copy.minimum = minimum;
+			copy.maximum = maximum;
+		} while (!validate(read));
+		
+		return copy;
+	}
+	
+	/**
+	 * Mark the start of a rewrite of the tracers. The odd counter is published before any 
+	 * tracer is written.
+	 */
+	private void beginWrite() {
+		version = version + 1;
+		VarHandle.storeStoreFence();
+	}
+	
+	/**
+	 * Mark the end of a rewrite of the tracers, publishing them with the even counter.
+	 */
+	private void endWrite() {
+		version = version + 1;
+	}
+	
+	/**
+	 * Wait until no rewrite is in progress and get the counter to validate a read against.
+	 * 
+	 * @return  the even counter
+	 */
+	private int beginRead() {
+		int read = version;
+		
+		while ((read & 1) != 0) {
+			Thread.onSpinWait();
+			read = version;
+		}
+		
+		return read;
+	}
+	
+	/**
+	 * Check that no rewrite started since {@link #beginRead}, so the locations read in between 
+	 * are consistent.
+	 * 
+	 * @param read  the counter returned by beginRead
+	 * @return  true if the read is consistent, false if it must be retried
+	 */
+	private boolean validate(int read) {
+		VarHandle.loadLoadFence();
+		return version == read;
+	}
+	
+	/**
+	 * Interpolate between the two buoys on either side of a fractional buoy index.
+	 * 
+	 * @param location  the buoy index, from 0 to numGroups+1
+	 * @return  the estimate
+	 */
+	private int interpolate(double location) {
+		if (location <= 0) {
+			return location(0);
+		} else if (location >= numGroups+1) {
+			return location(numGroups+1);
+		}
+		
+		int low = location((int) location);
+		int high = location((int) location + 1);
+		return (int) ((location-((int) location)) * (high-low) + low);
+	}
+	
+	/**
+	 * Get the location of a buoy: 0, the estimate of each group, then range-1. Without merged 
+	 * knots, the estimate of a group is its middle tracer.
+	 * 
+	 * @param index  the buoy index, from 0 to numGroups+1
+	 * @return  the location
+	 */
+	private int location(int index) {
+		Knots knots = merged;
+		
+		if (knots == null || index == 0 || index == numGroups+1) {
+			return ownLocation(index);
+		}
+		
+		return invert(knots, (double) index / (numGroups+1));
+	}
+	
+	/**
+	 * Get a knot of the CDF through the tracers of this sketch alone: the smallest value offered, 
+	 * the middle tracer of each group, then the largest value offered.
+	 * 
+	 * @param index  the knot index, from 0 to numGroups+1
+	 * @return  the knot, before it is made non-decreasing
+	 */
+	private int knot(int index) {
+		if (index == 0) {
+			return minimum;
+		} else if (index == numGroups+1) {
+			return maximum;
+		}
+		
+		return ownLocation(index);
+	}
+	
+	/**
+	 * Get the location of a buoy from the tracers of this sketch alone: 0, the middle tracer of 
+	 * each group, then range-1.
+	 * 
+	 * @param index  the buoy index, from 0 to numGroups+1
+	 * @return  the location
+	 */
+	private int ownLocation(int index) {
+		if (index == 0) {
+			return 0;
+		} else if (index == numGroups+1) {
+			return range-1;
+		}
+		
+		return tracers[(index-1) * numTracers + numTracers/2];
+	}
+	
+	/**
+	 * Get the number of values offered so far.
+	 * 
+	 * @return  the count
+	 */
+	public long count() {
+		return count;
+	}
+	
+	/**
+	 * Get an upper bound on the number of bytes written by {@link #encode}.
+	 * 
+	 * @return  the maximum encoded size
+	 */
+	public int maxEncodedSize() {
+		Knots knots = merged;
+		return 1 + 5 * 5 + 10 + 5 * 2 * tracers.length + 5 * NUM_BUOYS + 5 * 3 + 10 
+				+ (knots == null ? 0 : 13 * knots.values.length);
+	}
+	
+	/**
+	 * Write the full sketch to a buffer: a version byte, the parameters, the tracer groups, the 
+	 * baseline, the 101 linked buoys, the smallest and largest value offered, and the merged 
+	 * knots with their count. Integers are varint-encoded; tracers are zigzag deltas from the 
+	 * previous tracer, baseline entries are deltas from their tracer, buoys and knot values are 
+	 * deltas from the previous one, and knot fractions are raw doubles. Safe to call while 
+	 * another thread offers values: if a prune, reset or merge rewrites the tracers meanwhile, the 
+	 * encoding is rewritten from the same position. Does not allocate.
+	 * 
+	 * @param dst  the buffer, with at least {@link #maxEncodedSize} bytes remaining, taken after 
+	 *          the last merge
+	 */
+	public void encode(ByteBuffer dst) {
+		int start = dst.position();
+		int read;
+		
+		do {
+			dst.position(start);
+			read = beginRead();
+			dst.put(VERSION);
+			putVarint(dst, numGroups);
+			putVarint(dst, numTracers);
+			putVarint(dst, range);
+			putVarint(dst, pruneFrequency);
+			putVarint(dst, untilPrune);
+			putVarlong(dst, count);
+			
+			int previous = 0;
+			
+			for (int estimator = 0; estimator < tracers.length; estimator++) {
+				int tracer = tracers[estimator];
+				putVarint(dst, zigzag(tracer - previous));
+				previous = tracer;
+			}
+			
+			for (int estimator = 0; estimator < baseline.length; estimator++) {
+				putVarint(dst, zigzag(baseline[estimator] - tracers[estimator]));
+			}
+			
+			previous = 0;
+			
+			for (int index = 0; index < NUM_BUOYS; index++) {
+				int buoy = interpolate((double) (index * (numGroups+1)) / (NUM_BUOYS-1));
+				putVarint(dst, zigzag(buoy - previous));
+				previous = buoy;
+			}
+			
+			putVarint(dst, minimum);
+			putVarint(dst, maximum);
+			Knots knots = merged;
+			putVarint(dst, knots == null ? 0 : knots.values.length);
+			
+			if (knots != null) {
+				putVarlong(dst, knots.count);
+				previous = 0;
+				
+				for (int index = 0; index < knots.values.length; index++) {
+					putVarint(dst, zigzag(knots.values[index] - previous));
+					dst.putDouble(knots.fractions[index]);
+					previous = knots.values[index];
+				}
+			}
+		} while (!validate(read));
+	}
+	
+	/**
+	 * Read a sketch written by {@link #encode}. The update thresholds are drawn from a fresh 
+	 * random seed. The parameters are validated before anything is allocated, and every tracer, 
+	 * baseline entry and knot is checked against the range, so a corrupt or truncated encoding 
+	 * fails with an IllegalArgumentException.
+	 * 
+	 * @param src  the buffer, positioned at the start of the encoding
+	 * @return  the decoded sketch
+	 */
+	public static FloatingBuoySketch decode(ByteBuffer src) {
+		try {
+			return readSketch(src);
+		} catch (BufferUnderflowException e) {
+			throw new IllegalArgumentException("Invalid sketch encoding: truncated", e);
+		}
+	}
+	
+	/**
+	 * Read a sketch for {@link #decode}, which turns a buffer that ends too early into an 
+	 * IllegalArgumentException.
+	 * 
+	 * @param src  the buffer, positioned at the start of the encoding
+	 * @return  the decoded sketch
+	 */
+	private static FloatingBuoySketch readSketch(ByteBuffer src) {
+		checkVersion(src);
+		int numGroups = getVarint(src);
+		int numTracers = getVarint(src);
+		int range = getVarint(src);
+		int pruneFrequency = getVarint(src);
+		checkParameters(src, numGroups, numTracers, range, pruneFrequency);
+		int untilPrune = getVarint(src);
+		
+		if (untilPrune <= 0 || untilPrune > pruneFrequency) {
+			throw new IllegalArgumentException("Invalid sketch encoding: offers until prune " 
+					+ untilPrune);
+		}
+		
+		FloatingBuoySketch sketch = new FloatingBuoySketch(numGroups, numTracers, range, 
+				pruneFrequency);
+		sketch.untilPrune = untilPrune;
+		sketch.count = getVarlong(src);
+		
+		if (sketch.count < 0) {
+			throw new IllegalArgumentException("Invalid sketch encoding: count " + sketch.count);
+		}
+		
+		int previous = 0;
+		
+		for (int estimator = 0; estimator < sketch.tracers.length; estimator++) {
+			sketch.tracers[estimator] = checkValue(previous + unzigzag(getVarint(src)), range, 
+					"tracer");
+			previous = sketch.tracers[estimator];
+		}
+		
+		for (int estimator = 0; estimator < sketch.baseline.length; estimator++) {
+			sketch.baseline[estimator] = checkValue(sketch.tracers[estimator] 
+					+ unzigzag(getVarint(src)), range, "baseline entry");
+		}
+		
+		for (int index = 0; index < NUM_BUOYS; index++) {
+			getVarint(src);
+		}
+		
+		sketch.minimum = checkValue(getVarint(src), range, "minimum");
+		sketch.maximum = checkValue(getVarint(src), range, "maximum");
+		int numKnots = getVarint(src);
+		
+		if (numKnots < 0 || 9L * numKnots > src.remaining()) {
+			throw new IllegalArgumentException("Invalid sketch encoding: " + numKnots 
+					+ " knots do not fit in " + src.remaining() + " bytes");
+		}
+		
+		if (numKnots > 0) {
+			long mergedCount = getVarlong(src);
+			
+			if (mergedCount <= 0 || mergedCount > sketch.count) {
+				throw new IllegalArgumentException("Invalid sketch encoding: merged count " 
+						+ mergedCount + " of " + sketch.count);
+			}
+			
+			int[] values = new int[numKnots];
+			double[] fractions = new double[numKnots];
+			previous = 0;
+			double fraction = 0;
+			
+			for (int index = 0; index < numKnots; index++) {
+				values[index] = checkValue(previous + unzigzag(getVarint(src)), range, "knot");
+				fractions[index] = src.getDouble();
+				
+				// Written this way round so that NaN fails too
+				if (!(values[index] >= previous && fractions[index] >= fraction 
+						&& fractions[index] <= 1)) {
+					throw new IllegalArgumentException("Invalid sketch encoding: knot " 
+							+ values[index] + " at " + fractions[index] + " after " + previous 
+							+ " at " + fraction);
+				}
+				
+				previous = values[index];
+				fraction = fractions[index];
+			}
+			
+			if (fraction != 1) {
+				throw new IllegalArgumentException("Invalid sketch encoding: knots end at " 
+						+ fraction);
+			}
+			
+			sketch.merged = new Knots(values, fractions, mergedCount);
+		}
+		
+		return sketch;
+	}
+	
+	/**
+	 * Read only the 101 linked buoys of a sketch written by {@link #encode}, skipping over the 
+	 * tracer groups. Every buoy is checked against the range, and a corrupt or truncated encoding 
+	 * fails with an IllegalArgumentException. Does not allocate unless it fails.
+	 * 
+	 * @param src  the buffer, positioned at the start of the encoding
+	 * @param dst  the array receiving the estimate for each percentile (from 0 to 100 percentile)
+	 */
+	public static void decodeBuoys(ByteBuffer src, int[] dst) {
+		try {
+			readBuoys(src, dst);
+		} catch (BufferUnderflowException e) {
+			throw new IllegalArgumentException("Invalid sketch encoding: truncated", e);
+		}
+	}
+	
+	/**
+	 * Read the buoys for {@link #decodeBuoys}, which turns a buffer that ends too early into an 
+	 * IllegalArgumentException.
+	 * 
+	 * @param src  the buffer, positioned at the start of the encoding
+	 * @param dst  the array receiving the estimate for each percentile (from 0 to 100 percentile)
+	 */
+	private static void readBuoys(ByteBuffer src, int[] dst) {
+		checkVersion(src);
+		int numGroups = getVarint(src);
+		int numTracers = getVarint(src);
+		int range = getVarint(src);
+		int pruneFrequency = getVarint(src);
+		checkParameters(src, numGroups, numTracers, range, pruneFrequency);
+		getVarint(src);
+		getVarlong(src);
+		
+		for (int estimator = 0; estimator < 2 * numGroups * numTracers; estimator++) {
+			getVarint(src);
+		}
+		
+		int previous = 0;
+		
+		for (int index = 0; index < NUM_BUOYS; index++) {
+			dst[index] = checkValue(previous + unzigzag(getVarint(src)), range, "buoy");
+			previous = dst[index];
+		}
+	}
+	
+	/**
+	 * Read the version byte and reject encodings this class cannot read.
+	 * 
+	 * @param src  the buffer
+	 */
+	private static void checkVersion(ByteBuffer src) {
+		byte version = src.get();
+		
+		if (version != VERSION) {
+			throw new IllegalArgumentException("Unsupported sketch encoding version: " + version);
+		}
+	}
+	
+	/**
+	 * Check the parameters of an encoding, and that the buffer holds at least one byte for each 
+	 * of the tracers, baseline entries and buoys they imply.
+	 * 
+	 * @param src  the buffer, positioned after the parameters
+	 * @param numGroups  number of tracer groups
+	 * @param numTracers  number of tracers per group
+	 * @param range  the maximum input value
+	 * @param pruneFrequency  number of offers between two prunes
+	 */
+	private static void checkParameters(ByteBuffer src, int numGroups, int numTracers, int range, 
+			int pruneFrequency) {
+		if (numGroups <= 0 || numTracers < 2 || range <= 0 || pruneFrequency <= 0) {
+			throw new IllegalArgumentException("Invalid sketch encoding: " + numGroups 
+					+ " groups, " + numTracers + " tracers, range " + range 
+					+ ", prune frequency " + pruneFrequency);
+		}
+		
+		if (2L * numGroups * numTracers + NUM_BUOYS > src.remaining()) {
+			throw new IllegalArgumentException("Invalid sketch encoding: " + numGroups + " x " 
+					+ numTracers + " tracers do not fit in " + src.remaining() + " bytes");
+		}
+	}
+	
+	/**
+	 * Check that a decoded value lies in [0, range).
+	 * 
+	 * @param value  the value
+	 * @param range  the maximum input value
+	 * @param name  what the value is, for the message
+	 * @return  the value
+	 */
+	private static int checkValue(int value, int range, String name) {
+		if (value < 0 || value >= range) {
+			throw new IllegalArgumentException("Invalid sketch encoding: " + name + " " + value 
+					+ " outside [0, " + range + ")");
+		}
+		
+		return value;
+	}
+	
+	/**
+	 * Map a signed delta to an unsigned one so small magnitudes encode in few bytes.
+	 * 
+	 * @param value  the signed value
+	 * @return  the zigzag-encoded value
+	 */
+	private static int zigzag(int value) {
+		return (value << 1) ^ (value >> 31);
+	}
+	
+	/**
+	 * Reverse {@link #zigzag}.
+	 * 
+	 * @param value  the zigzag-encoded value
+	 * @return  the signed value
+	 */
+	private static int unzigzag(int value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+	
+	/**
+	 * Write an int using 7 bits per byte, least significant group first.
+	 * 
+	 * @param dst  the buffer
+	 * @param value  the value
+	 */
+	private static void putVarint(ByteBuffer dst, int value) {
+		while ((value & ~0x7F) != 0) {
+			dst.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		
+		dst.put((byte) value);
+	}
+	
+	/**
+	 * Write a long using 7 bits per byte, least significant group first.
+	 * 
+	 * @param dst  the buffer
+	 * @param value  the value
+	 */
+	private static void putVarlong(ByteBuffer dst, long value) {
+		while ((value & ~0x7FL) != 0) {
+			dst.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		
+		dst.put((byte) value);
+	}
+	
+	/**
+	 * Read an int written by {@link #putVarint}.
+	 * 
+	 * @param src  the buffer
+	 * @return  the value
+	 */
+	private static int getVarint(ByteBuffer src) {
+		int value = 0;
+		
+		for (int shift = 0; ; shift += 7) {
+			byte next = src.get();
+			value |= (next & 0x7F) << shift;
+			
+			if (next >= 0) {
+				return value;
+			}
+		}
+	}
+	
+	/**
+	 * Read a long written by {@link #putVarlong}.
+	 * 
+	 * @param src  the buffer
+	 * @return  the value
+	 */
+	private static long getVarlong(ByteBuffer src) {
+		long value = 0;
+		
+		for (int shift = 0; ; shift += 7) {
+			byte next = src.get();
+			value |= (long) (next & 0x7F) << shift;
+			
+			if (next >= 0) {
+				return value;
+			}
+		}
+	}
+	
+	/**
+	 * Main class.
+	 * 
+	 * @param args  no arguments necessary
+	 */
+	public static void main(String[] args) {
+		// Input range (0, range-1)
+		int range = 1000000;
+		
+		// Number of input values
+		int inputSize = 30000;
+		
+		// Streaming sketch, pruned every 10000 values
+		FloatingBuoySketch sketch = new FloatingBuoySketch(4, 11, range, 10000);
+		SplittableRandom input = new SplittableRandom();
+		
+		for (int iter = 0; iter < inputSize; iter++) {
+			sketch.offer(input.nextInt(range));
+		}
+		
+		// Output the estimates
+		int[] allBuoys = sketch.buoys();
+		
+		for (int index = 0; index < allBuoys.length; index++) {
+			System.out.println(allBuoys[index]);
+		}
+		
+		// Three nodes over adjacent thirds of the range, merged in two orders: both give the 
+		// quantiles of the whole stream, 30% at 270000 and 70% at 730000
+		FloatingBuoySketch[] nodes = new FloatingBuoySketch[3];
+		int[] bounds = {0, 300000, 700000, range};
+		
+		for (int node = 0; node < nodes.length; node++) {
+			nodes[node] = new FloatingBuoySketch(9, 11, range, 10000);
+			
+			for (int iter = 0; iter < 10 * inputSize; iter++) {
+				nodes[node].offer(bounds[node] + input.nextInt(bounds[node+1] - bounds[node]));
+			}
+		}
+		
+		FloatingBuoySketch left = nodes[0].snapshot().merge(nodes[1]).merge(nodes[2]);
+		FloatingBuoySketch right = nodes[0].snapshot().merge(nodes[1].snapshot().merge(nodes[2]));
+		System.out.println("(A+B)+C: " + left.quantile(0.3) + ", " + left.quantile(0.7));
+		System.out.println("A+(B+C): " + right.quantile(0.3) + ", " + right.quantile(0.7));
+	}
+}
\ No newline at end of file
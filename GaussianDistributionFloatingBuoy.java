@@ -1,5 +1,9 @@
 package floating_buoys;
 
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.commons.math3.distribution.NormalDistribution;
+
 /**
  * Floating buoy algorithm for estimating percentiles on samples generated from a Gaussian 
  * distribution.
@@ -8,6 +12,18 @@ package floating_buoys;
  */
 public class GaussianDistributionFloatingBuoy extends UniformDistributionFloatingBuoy {
 	
+	// Standard normal distribution
+	private static final NormalDistribution NORMAL = new NormalDistribution(null, 0, 1);
+	
+	// Cumulative probabilities of -3 and +3 standard deviations
+	private static final double LOWER = NORMAL.cumulativeProbability(-3);
+	private static final double UPPER = NORMAL.cumulativeProbability(3);
+	
+	// Inverse cumulative distribution function of the truncated Gaussian on the unit interval, 
+	// tabulated once
+	private static final double[] TRUNCATED_TABLE = InverseCdfSampleSource.tabulate(
+			p -> 0.5 + NORMAL.inverseCumulativeProbability(LOWER + p * (UPPER-LOWER)) / 6);
+	
 	/**
 	 * Main class.
 	 * 
@@ -29,9 +45,10 @@ public class GaussianDistributionFloatingBuoy extends UniformDistributionFloatin
 		// Number of tracers per group (choose t >= 2)
 		int numTracers = 11;
 		
-		// Cast the tracer groups to obtain the initial buoy locations
+		// Cast the tracer groups to obtain the initial buoy locations, across all cores
 		GaussianDistributionFloatingBuoy buoys = new GaussianDistributionFloatingBuoy();
-		int[] initialLocations = buoys.cast(numGroups, numTracers, range, castSize, numCast);
+		int[] initialLocations = buoys.cast(numGroups, numTracers, range, castSize, numCast, 
+				ForkJoinPool.commonPool());
 		
 		// Connect the initial locations to get a buoy for each percentile
 		int[] allBuoys = linkBuoys(initialLocations);
@@ -64,4 +81,17 @@ public class GaussianDistributionFloatingBuoy extends UniformDistributionFloatin
 		
 		return sample;
 	}
+	
+	/**
+	 * Get a source of samples from the truncated Gaussian distribution backed by the shared table 
+	 * of its inverse cumulative distribution function, so no sample is ever rejected.
+	 * 
+	 * @param minimum  the lower bound
+	 * @param maximum  the upper bound
+	 * @return  the sample source
+	 */
+	@Override
+	public SampleSource sampleSource(int minimum, int maximum) {
+		return new InverseCdfSampleSource(TRUNCATED_TABLE, minimum, maximum, rand.nextLong());
+	}
 }
\ No newline at end of file
@@ -0,0 +1,92 @@
+package floating_buoys;
+
+import java.util.SplittableRandom;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Sample source that draws each sample from a tabulated inverse cumulative distribution function 
+ * with one random number, a table lookup and a linear interpolation. The table holds fractions of 
+ * the unit interval, so a distribution is tabulated once with {@link #tabulate} and shared by 
+ * every source, whatever its bounds; the fraction is scaled to the bounds at draw time.
+ * 
+ * @author Ruixin Yang
+ */
+public class InverseCdfSampleSource implements SampleSource {
+	
+	// Number of intervals in the lookup table
+	private static final int TABLE_SIZE = 1 << 16;
+	
+	// Random instance
+	private final SplittableRandom rand;
+	
+	// Fraction of the range at each of the TABLE_SIZE+1 evenly spaced cumulative probabilities
+	private final double[] table;
+	
+	// Lower bound
+	private final int minimum;
+	
+	// Width of the range the fractions are scaled to
+	private final double scale;
+	
+	/**
+	 * Draw from a shared table scaled to [minimum, maximum-1].
+	 * 
+	 * @param table  the table built by {@link #tabulate}, which is not copied
+	 * @param minimum  the lower bound
+	 * @param maximum  the upper bound
+	 * @param seed  the seed
+	 */
+	public InverseCdfSampleSource(double[] table, int minimum, int maximum, long seed) {
+		this.rand = new SplittableRandom(seed);
+		this.table = table;
+		this.minimum = minimum;
+		this.scale = maximum-1-minimum;
+	}
+	
+	/**
+	 * Tabulate an inverse cumulative distribution function on the unit interval.
+	 * 
+	 * @param inverseCdf  maps a cumulative probability in [0, 1] to a fraction of the range, in 
+	 *          [0, 1]
+	 * @return  the table
+	 */
+	public static double[] tabulate(DoubleUnaryOperator inverseCdf) {
+		double[] table = new double[TABLE_SIZE+1];
+		
+		for (int index = 0; index < table.length; index++) {
+			table[index] = inverseCdf.applyAsDouble((double) index / TABLE_SIZE);
+		}
+		
+		return table;
+	}
+	
+	/**
+	 * Generate a random sample by interpolating in the table.
+	 * 
+	 * @return  the random sample
+	 */
+	@Override
+	public int sample() {
+		double location = rand.nextDouble() * TABLE_SIZE;
+		int index = (int) location;
+		return (int) Math.round(minimum + scale 
+				* (table[index] + (location-index) * (table[index+1]-table[index])));
+	}
+	
+	/**
+	 * Fill part of an array with random samples.
+	 * 
+	 * @param dst  the array
+	 * @param off  the index of the first sample
+	 * @param len  the number of samples
+	 */
+	@Override
+	public void fill(int[] dst, int off, int len) {
+		for (int index = off; index < off + len; index++) {
+			double location = rand.nextDouble() * TABLE_SIZE;
+			int low = (int) location;
+			dst[index] = (int) Math.round(minimum + scale 
+					* (table[low] + (location-low) * (table[low+1]-table[low])));
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,303 @@
+package floating_buoys;
+
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Floating buoy engine over long values, for inputs such as nanosecond latencies or byte counts 
+ * whose range does not fit in an int. A range this wide cannot be crossed one unit at a time, so 
+ * the tracers start from the empirical quantiles of a reservoir of samples and live on a grid of 
+ * 2^shift units, where the shift makes the spread of a typical group about 2^{@value #STEP_SHIFT} 
+ * grid points. A unit step on the grid is the step a long tracer would take anyway, so nothing 
+ * is lost to the grid, and the tracers fit in an int: each input is shifted onto the grid once 
+ * and the update, threshold and prune loops are those of 
+ * {@link UniformDistributionFloatingBuoy}, vectorized over int lanes at the same throughput. 
+ * Estimates are mapped back to long values.
+ * 
+ * @author Ruixin Yang
+ */
+public class LongFloatingBuoy {
+	
+	// Spread of a typical group in grid points, as a power of two
+	public static final int STEP_SHIFT = 18;
+	
+	/**
+	 * Main class.
+	 * 
+	 * @param args  no arguments necessary
+	 */
+	public static void main(String[] args) {
+		// Input range (0, range-1): up to ten seconds in nanoseconds
+		long range = 10000000000L;
+		
+		// Number of input values
+		int inputSize = 10000000;
+		
+		// Number of input values between two prunes
+		int pruneFrequency = 10000;
+		
+		// Number of tracer groups (choose g s.t. 100 % g+1 = 0 and 0 < g <= 99)
+		int numGroups = 4;
+		
+		// Number of tracers per group (choose t >= 2)
+		int numTracers = 11;
+		
+		// Number of samples that place the tracers before the updates
+		int reservoirSize = 4096;
+		
+		double[] percentile = UniformDistributionFloatingBuoy.getPercentiles(numGroups);
+		SplittableRandom rand = new SplittableRandom();
+		long[] reservoir = new long[reservoirSize];
+		
+		for (int index = 0; index < reservoirSize; index++) {
+			reservoir[index] = rand.nextLong(range);
+		}
+		
+		Arrays.sort(reservoir);
+		int shift = getShift(percentile, reservoir, range);
+		int[] tracers = initializeTracers(percentile, numTracers, reservoir, shift);
+		int[] baseline = UniformDistributionFloatingBuoy.generateBaseline(tracers);
+		int[] threshold = UniformDistributionFloatingBuoy.getThresholds(percentile, numTracers);
+		
+		for (int iter = 1; iter <= inputSize; iter++) {
+			updateTracers(tracers, threshold, rand.nextLong(range), shift, rand.nextInt() >>> 1);
+			
+			if (iter % pruneFrequency == 0) {
+				UniformDistributionFloatingBuoy.prune(tracers, baseline, numTracers);
+			}
+		}
+		
+		// Connect the middle tracers to get a buoy for each percentile
+		long[] allBuoys = linkBuoys(getInitialLocations(tracers, numTracers, range, shift));
+		
+		// Output the estimates
+		for (int index = 0; index < allBuoys.length; index++) {
+			System.out.println(allBuoys[index]);
+		}
+		
+		// Measure the error
+		UniformDistributionFloatingBuoy.DECIMAL_FORMAT.setRoundingMode(RoundingMode.HALF_UP);
+		System.out.println("Error: " + UniformDistributionFloatingBuoy.DECIMAL_FORMAT.format(
+				100 * getError(allBuoys, range-1)) + "%.");
+	}
+	
+	/**
+	 * Get the smallest shift that maps the whole range onto int grid points.
+	 * 
+	 * @param range  the maximum input value
+	 * @return  the shift
+	 */
+	public static int getShift(long range) {
+		return Math.max(0, 33 - Long.numberOfLeadingZeros(range-1));
+	}
+	
+	/**
+	 * Get the shift of the grid from a sorted reservoir of samples: the median spread of the 
+	 * groups that {@link #initializeTracers(double[], int, long[], int)} places, divided by 
+	 * 2^{@value #STEP_SHIFT} and rounded down to a power of two, but never less than 
+	 * {@link #getShift(long)}.
+	 * 
+	 * @param percentile  the target percentiles
+	 * @param reservoir  the samples, sorted in ascending order
+	 * @param range  the maximum input value
+	 * @return  the shift
+	 */
+	public static int getShift(double[] percentile, long[] reservoir, long range) {
+		long[] spread = new long[percentile.length];
+		
+		for (int index = 0; index < percentile.length; index++) {
+			double below = index == 0 ? 0 : percentile[index-1];
+			double above = index == percentile.length-1 ? 1 : percentile[index+1];
+			spread[index] = empiricalQuantile(reservoir, (percentile[index] + above) / 2) 
+					- empiricalQuantile(reservoir, (below + percentile[index]) / 2);
+		}
+		
+		Arrays.sort(spread);
+		long step = spread[spread.length/2] >> STEP_SHIFT;
+		return Math.max(getShift(range), 63 - Long.numberOfLeadingZeros(Math.max(1, step)));
+	}
+	
+	/**
+	 * Initialize the set of tracer groups that are evenly spaced from 0 to range, inclusive, as 
+	 * grid points.
+	 * 
+	 * @param numGroups  number of tracer groups
+	 * @param numTracers  number of tracers in each group
+	 * @param range  the maximum input value
+	 * @param shift  the shift of the grid, at least {@link #getShift(long)}
+	 * @return  the initialized set of tracer groups
+	 */
+	public static int[] initializeTracers(int numGroups, int numTracers, long range, int shift) {
+		return UniformDistributionFloatingBuoy.initializeTracers(numGroups, numTracers,
+				toGrid(range-1, shift));
+	}
+	
+	/**
+	 * Initialize the tracer groups from a sorted reservoir of samples, as grid points, by 
+	 * {@link UniformDistributionFloatingBuoy#initializeTracers(double[], int, int[])}.
+	 * 
+	 * @param percentile  the target percentiles
+	 * @param numTracers  number of tracers in each group
+	 * @param reservoir  the samples, sorted in ascending order
+	 * @param shift  the shift of the grid, at least {@link #getShift(long)}
+	 * @return  the initialized set of tracer groups
+	 */
+	public static int[] initializeTracers(double[] percentile, int numTracers, long[] reservoir,
+			int shift) {
+		int[] scaled = new int[reservoir.length];
+		
+		for (int index = 0; index < reservoir.length; index++) {
+			scaled[index] = toGrid(reservoir[index], shift);
+		}
+		
+		return UniformDistributionFloatingBuoy.initializeTracers(percentile, numTracers, scaled);
+	}
+	
+	/**
+	 * Get the empirical quantile of a sorted array of samples.
+	 * 
+	 * @param sorted  the samples, sorted in ascending order
+	 * @param p  the quantile, in [0, 1]
+	 * @return  the sample at that rank
+	 */
+	private static long empiricalQuantile(long[] sorted, double p) {
+		return sorted[(int) Math.round(Math.min(1, Math.max(0, p)) * (sorted.length-1))];
+	}
+	
+	/**
+	 * Map a value to the grid point below it.
+	 * 
+	 * @param value  the value, in [0, range)
+	 * @param shift  the shift of the grid
+	 * @return  the grid point
+	 */
+	public static int toGrid(long value, int shift) {
+		return (int) (value >>> shift);
+	}
+	
+	/**
+	 * Map a grid point back to the value in the middle of its cell.
+	 * 
+	 * @param point  the grid point
+	 * @param shift  the shift of the grid
+	 * @return  the value
+	 */
+	public static long fromGrid(int point, int shift) {
+		return ((long) point << shift) + ((1L << shift) >> 1);
+	}
+	
+	/**
+	 * Move every tracer one grid point toward the input value if its update threshold allows it, 
+	 * by {@link UniformDistributionFloatingBuoy#updateTracers}.
+	 * 
+	 * @param tracers  the tracer groups, as grid points
+	 * @param threshold  the update threshold of each tracer
+	 * @param input  the input value, in [0, range)
+	 * @param shift  the shift of the grid
+	 * @param updateThreshold  the random draw, in [0, 2^31)
+	 */
+	public static void updateTracers(int[] tracers, int[] threshold, long input, int shift,
+			int updateThreshold) {
+		UniformDistributionFloatingBuoy.updateTracers(tracers, threshold, toGrid(input, shift),
+				updateThreshold);
+	}
+	
+	/**
+	 * Get the initial buoy locations: the middle tracer of each group, bracketed by 0 and 
+	 * range-1.
+	 * 
+	 * @param tracers  the tracer groups, as grid points
+	 * @param numTracers  number of tracers in each group
+	 * @param range  the maximum input value
+	 * @param shift  the shift of the grid
+	 * @return  the initial location (estimate) of each buoy (percentile)
+	 */
+	public static long[] getInitialLocations(int[] tracers, int numTracers, long range,
+			int shift) {
+		int numGroups = tracers.length / numTracers;
+		long[] output = new long[numGroups+2];
+		output[0] = 0;
+		output[numGroups+1] = range-1;
+		
+		for (int index = 0; index < numGroups; index++) {
+			output[index+1] = Math.min(fromGrid(tracers[index * numTracers + numTracers/2], shift),
+					range-1);
+		}
+		
+		return output;
+	}
+	
+	/**
+	 * Generate all 101 buoys from the initial locations.
+	 * 
+	 * @param initialLocations  the initial buoy locations
+	 * @return  the estimate for each percentile (from 0 to 100 percentile)
+	 */
+	public static long[] linkBuoys(long[] initialLocations) {
+		long[] allBuoys = new long[101];
+		int groupWidth = 100 / (initialLocations.length-1);
+		
+		for (int index = 0; index < allBuoys.length; index++) {
+			allBuoys[index] = index % groupWidth == 0 ? initialLocations[index / groupWidth] 
+					: interpolate(initialLocations, (double) index / groupWidth);
+		}
+		
+		return allBuoys;
+	}
+	
+	/**
+	 * Estimate an arbitrary quantile by interpolating between the two nearest initial locations.
+	 * 
+	 * @param initialLocations  the initial buoy locations
+	 * @param p  the quantile, in [0, 1]
+	 * @return  the estimate
+	 */
+	public static long getQuantile(long[] initialLocations, double p) {
+		double location = p * (initialLocations.length-1);
+		
+		if (location <= 0) {
+			return initialLocations[0];
+		} else if (location >= initialLocations.length-1) {
+			return initialLocations[initialLocations.length-1];
+		}
+		
+		return interpolate(initialLocations, location);
+	}
+	
+	/**
+	 * Interpolate between the two initial locations on either side of a fractional index. The 
+	 * offset from the lower location is computed in double and added to it as a long, so 
+	 * locations above 2^53 keep their precision.
+	 * 
+	 * @param initialLocations  the initial buoy locations
+	 * @param location  the fractional index, inside the array
+	 * @return  the estimate
+	 */
+	private static long interpolate(long[] initialLocations, double location) {
+		long low = initialLocations[(int) location];
+		long high = initialLocations[(int) location + 1];
+		return low + (long) ((location-((int) location)) * (high-low));
+	}
+	
+	/**
+	 * Get the percent error across all buoy estimates (percentiles) of a uniform input.
+	 * 
+	 * @param allBuoys  the array of buoys
+	 * @param range  the maximum input value
+	 * @return  the percent error
+	 */
+	public static double getError(long[] allBuoys, long range) {
+		double totalError = 0;
+		double total = 0;
+		
+		for (int index = 0; index < allBuoys.length; index++) {
+			long actual = range / (allBuoys.length-1) * index
+					+ range % (allBuoys.length-1) * index / (allBuoys.length-1);
+			totalError += Math.abs((double) actual - allBuoys[index]);
+			total += actual;
+		}
+		
+		return totalError / total;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,462 @@
+package floating_buoys;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.SplittableRandom;
+
+/**
+ * Store of keyed floating buoy sketches kept in a memory-mapped file. Each key owns a fixed-size 
+ * slot holding its tracer groups and baseline (numGroups x numTracers ints each, laid out like 
+ * {@link UniformDistributionFloatingBuoy#initializeTracers}), updated in place. Slots are handed 
+ * out in order and found through a compact key index in the same file: a linear-probing table 
+ * of (key, slot) entries with at least twice as many entries as keys, so it is never more than 
+ * half full and a probe always ends quickly. Reopening the file needs no reload pass, and the 
+ * operating system pages slots in and out as they are used. Not thread-safe.
+ * 
+ * @author Ruixin Yang
+ */
+public class MappedSketchStore implements Closeable {
+	
+	// Identifies a sketch store file ("FBSS")
+	private static final int MAGIC = 0x46425353;
+	
+	// Version of the file layout
+	private static final int VERSION = 2;
+	
+	// Size of the file header in bytes
+	private static final int HEADER_SIZE = 64;
+	
+	// Size of an index entry (key, slot+1 or 0 if empty, padding) in bytes
+	private static final int ENTRY_SIZE = 16;
+	
+	// Size of the slot header (count, offers until the next prune, padding) in bytes
+	private static final int SLOT_HEADER_SIZE = 16;
+	
+	// Maximum size of a single mapping in bytes
+	private static final long MAX_CHUNK_SIZE = 1L << 30;
+	
+	// Maximum number of keys, so that the index size fits in an int
+	private static final int MAX_CAPACITY = 1 << 29;
+	
+	// Random instance for the update thresholds
+	private final SplittableRandom rand = new SplittableRandom();
+	
+	// Update threshold of each tracer, shared by every slot
+	private final int[] threshold;
+	
+	// Initial tracer groups, copied into every new slot
+	private final int[] initialTracers;
+	
+	// Mapping of the file header
+	private final MappedByteBuffer header;
+	
+	// Mappings of the key index, each holding entriesPerChunk entries
+	private final MappedByteBuffer[] index;
+	
+	// Mappings of the slots, each holding slotsPerChunk slots
+	private final MappedByteBuffer[] chunks;
+	
+	// File channel backing the mappings
+	private final FileChannel channel;
+	
+	// Number of tracer groups
+	private final int numGroups;
+	
+	// Number of tracers per group
+	private final int numTracers;
+	
+	// Input range (0, range-1)
+	private final int range;
+	
+	// Number of offers to a key between two prunes
+	private final int pruneFrequency;
+	
+	// Number of slots, the maximum number of keys
+	private final int capacity;
+	
+	// Number of index entries (a power of two, at least twice the capacity)
+	private final int indexSize;
+	
+	// Number of index entries per mapping
+	private final int entriesPerChunk;
+	
+	// Size of a slot in bytes
+	private final int slotSize;
+	
+	// Number of slots per mapping
+	private final int slotsPerChunk;
+	
+	// Number of slots handed out, mirrored in the file header
+	private int size;
+	
+	/**
+	 * Open a store, creating the file if it does not exist yet. An existing file must have been 
+	 * created with the same parameters.
+	 * 
+	 * @param path  the file
+	 * @param numGroups  number of tracer groups (choose g s.t. 100 % g+1 = 0 and 0 < g <= 99)
+	 * @param numTracers  number of tracers per group (choose t >= 2)
+	 * @param range  the maximum input value
+	 * @param pruneFrequency  number of offers to a key between two prunes
+	 * @param capacity  the maximum number of keys, at most 2^29
+	 * @throws IOException  if the file cannot be opened or mapped
+	 */
+	public MappedSketchStore(Path path, int numGroups, int numTracers, int range,
+			int pruneFrequency, int capacity) throws IOException {
+		if (capacity <= 0 || capacity > MAX_CAPACITY) {
+			throw new IllegalArgumentException("Capacity must be in (0, " + MAX_CAPACITY 
+					+ "], got " + capacity);
+		}
+		
+		this.numGroups = numGroups;
+		this.numTracers = numTracers;
+		this.range = range;
+		this.pruneFrequency = pruneFrequency;
+		this.capacity = capacity;
+		this.indexSize = Integer.highestOneBit(2 * capacity - 1) << 1;
+		this.entriesPerChunk = (int) Math.min(indexSize, MAX_CHUNK_SIZE / ENTRY_SIZE);
+		this.slotSize = SLOT_HEADER_SIZE + 2 * 4 * numGroups * numTracers;
+		this.slotsPerChunk = (int) Math.min(capacity, MAX_CHUNK_SIZE / slotSize);
+		this.threshold = UniformDistributionFloatingBuoy.getThresholds(
+				UniformDistributionFloatingBuoy.getPercentiles(numGroups), numTracers);
+		this.initialTracers = UniformDistributionFloatingBuoy.initializeTracers(numGroups,
+				numTracers, range);
+		this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		
+		this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+		header.order(ByteOrder.LITTLE_ENDIAN);
+		
+		if (header.getInt(0) == MAGIC) {
+			if (header.getInt(4) != VERSION || header.getInt(8) != numGroups
+					|| header.getInt(12) != numTracers || header.getInt(16) != range
+					|| header.getInt(20) != pruneFrequency || header.getInt(24) != this.capacity) {
+				channel.close();
+				throw new IOException("Sketch store " + path + " was created with different "
+						+ "parameters");
+			}
+		} else {
+			header.putInt(4, VERSION);
+			header.putInt(8, numGroups);
+			header.putInt(12, numTracers);
+			header.putInt(16, range);
+			header.putInt(20, pruneFrequency);
+			header.putInt(24, this.capacity);
+			header.putInt(28, 0);
+			header.putInt(0, MAGIC);
+		}
+		
+		this.size = header.getInt(28);
+		this.index = new MappedByteBuffer[indexSize / entriesPerChunk];
+		
+		for (int chunk = 0; chunk < index.length; chunk++) {
+			index[chunk] = channel.map(FileChannel.MapMode.READ_WRITE, 
+					HEADER_SIZE + (long) chunk * entriesPerChunk * ENTRY_SIZE, 
+					(long) entriesPerChunk * ENTRY_SIZE);
+			index[chunk].order(ByteOrder.LITTLE_ENDIAN);
+		}
+		
+		long slotStart = HEADER_SIZE + (long) indexSize * ENTRY_SIZE;
+		this.chunks = new MappedByteBuffer[(this.capacity + slotsPerChunk - 1) / slotsPerChunk];
+		
+		for (int chunk = 0; chunk < chunks.length; chunk++) {
+			long start = slotStart + (long) chunk * slotsPerChunk * slotSize;
+			long length = (long) Math.min(slotsPerChunk, this.capacity - chunk * slotsPerChunk)
+					* slotSize;
+			chunks[chunk] = channel.map(FileChannel.MapMode.READ_WRITE, start, length);
+			chunks[chunk].order(ByteOrder.LITTLE_ENDIAN);
+		}
+	}
+	
+	/**
+	 * Push an input value into the sketch of a key, creating the sketch on first use. The update 
+	 * kernel requires inputs in [0, range), so values outside it are clamped to the nearest 
+	 * bound. Updates the mapped tracers in place and does not allocate.
+	 * 
+	 * @param key  the key
+	 * @param value  the input value
+	 */
+	public void offer(long key, int value) {
+		value = Math.min(Math.max(value, 0), range-1);
+		int slot = findSlot(key, true);
+		MappedByteBuffer chunk = chunks[slot / slotsPerChunk];
+		int base = (slot % slotsPerChunk) * slotSize;
+		int tracerBase = base + SLOT_HEADER_SIZE;
+		int updateThreshold = rand.nextInt() >>> 1;
+		
+		for (int estimator = 0; estimator < threshold.length; estimator++) {
+			int offset = tracerBase + 4 * estimator;
+			int tracer = chunk.getInt(offset);
+			int percentile = threshold[estimator];
+			chunk.putInt(offset, tracer
+					+ (((tracer - value) & (updateThreshold - percentile)) >>> 31)
+					- (((value - tracer) & (percentile - updateThreshold)) >>> 31));
+		}
+		
+		chunk.putLong(base, chunk.getLong(base) + 1);
+		int untilPrune = chunk.getInt(base + 8) - 1;
+		
+		if (untilPrune == 0) {
+			prune(chunk, tracerBase);
+			untilPrune = pruneFrequency;
+		}
+		
+		chunk.putInt(base + 8, untilPrune);
+	}
+	
+	/**
+	 * Prune the tracer groups of one slot and refresh its baseline in place, as 
+	 * {@link UniformDistributionFloatingBuoy#prune} does for a heap tracer array.
+	 * 
+	 * @param chunk  the mapping holding the slot
+	 * @param tracerBase  the byte offset of the slot's tracers
+	 */
+	private void prune(MappedByteBuffer chunk, int tracerBase) {
+		int baselineBase = tracerBase + 4 * threshold.length;
+		
+		for (int start = 0; start < threshold.length; start += numTracers) {
+			int low = 0;
+			int high = numTracers-1;
+			
+			while (low + 1 < high && chunk.getInt(tracerBase + 4 * (start+low+1))
+					> chunk.getInt(baselineBase + 4 * (start+low+1))) {
+				low++;
+			}
+			
+			while (high - 1 > low && chunk.getInt(tracerBase + 4 * (start+high-1))
+					< chunk.getInt(baselineBase + 4 * (start+high-1))) {
+				high--;
+			}
+			
+			if (low != 0 || high != numTracers-1) {
+				int lowValue = chunk.getInt(tracerBase + 4 * (start+low));
+				int highValue = chunk.getInt(tracerBase + 4 * (start+high));
+				
+				for (int estimator = 0; estimator < numTracers; estimator++) {
+					chunk.putInt(tracerBase + 4 * (start+estimator), estimator *
+							((highValue-lowValue) / (numTracers-1)) + lowValue);
+				}
+			}
+		}
+		
+		for (int estimator = 0; estimator < threshold.length; estimator++) {
+			chunk.putInt(baselineBase + 4 * estimator, chunk.getInt(tracerBase + 4 * estimator));
+		}
+	}
+	
+	/**
+	 * Find the slot of a key by linear probing in the key index, optionally handing out the next 
+	 * slot for it. The index is at most half full, so the probe stops at an empty entry after a 
+	 * few steps even when every slot is taken.
+	 * 
+	 * @param key  the key
+	 * @param create  whether to hand out a slot if the key is missing
+	 * @return  the slot, or -1 if the key is missing and create is false
+	 */
+	private int findSlot(long key, boolean create) {
+		int mask = indexSize-1;
+		
+		for (int entry = hash(key) & mask; ; entry = (entry+1) & mask) {
+			MappedByteBuffer chunk = index[entry / entriesPerChunk];
+			int offset = (entry % entriesPerChunk) * ENTRY_SIZE;
+			int slot = chunk.getInt(offset + 8) - 1;
+			
+			if (slot < 0) {
+				return create ? claim(chunk, offset, key) : -1;
+			} else if (chunk.getLong(offset) == key) {
+				return slot;
+			}
+		}
+	}
+	
+	/**
+	 * Hand out the next slot to a key with fresh tracers and record it in an empty index entry. 
+	 * The slot and the count in the header are written before the entry, and the entry's slot 
+	 * number last, so a reopened file never indexes a half-written slot or hands one out twice.
+	 * 
+	 * @param chunk  the mapping holding the empty entry
+	 * @param offset  the byte offset of the empty entry
+	 * @param key  the key
+	 * @return  the slot
+	 */
+	private int claim(MappedByteBuffer chunk, int offset, long key) {
+		if (size == capacity) {
+			throw new IllegalStateException("Sketch store is full (" + capacity + " keys)");
+		}
+		
+		int slot = size;
+		MappedByteBuffer slotChunk = chunks[slot / slotsPerChunk];
+		int base = (slot % slotsPerChunk) * slotSize;
+		int tracerBase = base + SLOT_HEADER_SIZE;
+		
+		for (int estimator = 0; estimator < initialTracers.length; estimator++) {
+			slotChunk.putInt(tracerBase + 4 * estimator, initialTracers[estimator]);
+			slotChunk.putInt(tracerBase + 4 * (initialTracers.length + estimator),
+					initialTracers[estimator]);
+		}
+		
+		slotChunk.putLong(base, 0);
+		slotChunk.putInt(base + 8, pruneFrequency);
+		header.putInt(28, ++size);
+		chunk.putLong(offset, key);
+		chunk.putInt(offset + 8, slot+1);
+		return slot;
+	}
+	
+	/**
+	 * Spread the bits of a key over the low bits used to pick a slot.
+	 * 
+	 * @param key  the key
+	 * @return  the hash
+	 */
+	private static int hash(long key) {
+		long mixed = key * 0x9E3779B97F4A7C15L;
+		return (int) (mixed ^ (mixed >>> 32));
+	}
+	
+	/**
+	 * Get the initial buoy locations of a key.
+	 * 
+	 * @param key  the key
+	 * @return  the estimate of each tracer group, with the minimum and maximum at either end, or
+	 *          null if the key has never been offered a value
+	 */
+	public int[] initialLocations(long key) {
+		int slot = findSlot(key, false);
+		
+		if (slot < 0) {
+			return null;
+		}
+		
+		MappedByteBuffer chunk = chunks[slot / slotsPerChunk];
+		int tracerBase = (slot % slotsPerChunk) * slotSize + SLOT_HEADER_SIZE;
+		int[] output = new int[numGroups+2];
+		output[0] = 0;
+		output[numGroups+1] = range-1;
+		
+		for (int index = 0; index < numGroups; index++) {
+			output[index+1] = chunk.getInt(tracerBase + 4 * (index * numTracers + numTracers/2));
+		}
+		
+		return output;
+	}
+	
+	/**
+	 * Generate all 101 buoys of a key.
+	 * 
+	 * @param key  the key
+	 * @return  the estimate for each percentile (from 0 to 100 percentile), or null if the key
+	 *          has never been offered a value
+	 */
+	public int[] buoys(long key) {
+		int[] initialLocations = initialLocations(key);
+		return initialLocations == null ? null
+				: UniformDistributionFloatingBuoy.linkBuoys(initialLocations);
+	}
+	
+	/**
+	 * Estimate an arbitrary quantile of a key.
+	 * 
+	 * @param key  the key
+	 * @param p  the quantile, in [0, 1]
+	 * @return  the estimate, or -1 if the key has never been offered a value
+	 */
+	public int quantile(long key, double p) {
+		int[] initialLocations = initialLocations(key);
+		return initialLocations == null ? -1
+				: UniformDistributionFloatingBuoy.getQuantile(initialLocations, p);
+	}
+	
+	/**
+	 * Get the number of values offered to a key.
+	 * 
+	 * @param key  the key
+	 * @return  the count, or 0 if the key has never been offered a value
+	 */
+	public long count(long key) {
+		int slot = findSlot(key, false);
+		return slot < 0 ? 0 : chunks[slot / slotsPerChunk].getLong(
+				(slot % slotsPerChunk) * slotSize);
+	}
+	
+	/**
+	 * Get the number of keys in the store.
+	 * 
+	 * @return  the number of keys
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Write every modified entry and slot back to the file.
+	 */
+	public void force() {
+		header.force();
+		
+		for (MappedByteBuffer chunk : index) {
+			chunk.force();
+		}
+		
+		for (MappedByteBuffer chunk : chunks) {
+			chunk.force();
+		}
+	}
+	
+	/**
+	 * Flush and close the store. The mappings stay valid until they are garbage collected, but 
+	 * must not be used after closing.
+	 * 
+	 * @throws IOException  if the file cannot be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		force();
+		channel.close();
+	}
+	
+	/**
+	 * Main class.
+	 * 
+	 * @param args  the store file
+	 * @throws IOException  if the store cannot be opened
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: MappedSketchStore <file>");
+			System.exit(2);
+		}
+		
+		// Input range (0, range-1)
+		int range = 1000000;
+		
+		// Number of keys
+		int numKeys = 1000;
+		
+		// Number of input values
+		int inputSize = 10000000;
+		
+		SplittableRandom input = new SplittableRandom();
+		
+		try (MappedSketchStore store = new MappedSketchStore(Path.of(args[0]), 4, 11, range, 1000,
+				numKeys)) {
+			for (int iter = 0; iter < inputSize; iter++) {
+				store.offer(input.nextInt(numKeys), input.nextInt(range));
+			}
+			
+			// Output the estimates of the first key
+			int[] allBuoys = store.buoys(0);
+			
+			for (int index = 0; index < allBuoys.length; index++) {
+				System.out.println(allBuoys[index]);
+			}
+			
+			System.out.println(store.count(0) + " values for key 0.");
+		}
+	}
+}
\ No newline at end of file
@@ -1,6 +1,7 @@
 package floating_buoys;
 
-import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Floating buoy algorithm for estimating percentiles on samples generated from a truncated 
@@ -10,14 +11,27 @@ import java.util.Random;
  */
 public class PowerLawFloatingBuoy extends UniformDistributionFloatingBuoy {
 	
+	// Lower bound of the power-law support
+	private static final double LOWER = 0.00001;
+	
+	// Upper bound of the power-law support
+	private static final double UPPER = 10;
+	
+	// Exponent n
+	private static final double N = -2;
+	
+	// Terms of the inverse cumulative distribution function, computed once
+	private static final double LOWER_TERM = Math.pow(LOWER, N+1);
+	private static final double SPAN_TERM = Math.pow(UPPER, N+1) - LOWER_TERM;
+	
 	/**
 	 * Main class.
 	 * 
 	 * @param args  no arguments necessary
 	 */
 	public static void main(String[] args) {
-		// Number of elements spent tuning each cast
-		int castSize = 10000;
+		// Number of elements spent tuning each cast, in each of the two passes
+		int castSize = 5000;
 		
 		// Number of casts
 		int numCast = 3;
@@ -25,18 +39,26 @@ public class PowerLawFloatingBuoy extends UniformDistributionFloatingBuoy {
 		// Input range (0, range-1)
 		int range = 1000000;
 		
-		// Number of tracer groups to cast (choose g s.t. 100 % g+1 = 0 and 0 < g <= 99)
-		int numGroups = 99;
+		// Number of evenly spaced tracer groups of the coarse pass
+		int numCoarse = 9;
+		
+		// Number of tracer groups placed where the coarse buoys are far apart
+		int numFine = 15;
 		
 		// Number of tracers per group (choose t >= 2)
 		int numTracers = 11;
 		
-		// Cast the tracer groups to obtain the initial buoy locations
+		// Number of samples used to place the tracers on the skewed input
+		int reservoirSize = 1000;
+		
+		// Cast coarse then fine tracer groups for the initial buoy locations, across all cores
 		PowerLawFloatingBuoy buoys = new PowerLawFloatingBuoy();
-		int[] initialLocations = buoys.cast(numGroups, numTracers, range, castSize, numCast);
+		buoys.setRangeDiscovery(reservoirSize);
+		int[] initialLocations = buoys.castAdaptive(numCoarse, numFine, numTracers, range, 
+				castSize, numCast, ForkJoinPool.commonPool());
 		
 		// Connect the initial locations to get a buoy for each percentile
-		int[] allBuoys = linkBuoys(initialLocations);
+		int[] allBuoys = linkBuoys(initialLocations, buoys.getCastPercentiles());
 		
 		// Output the estimates
 		for (int index = 0; index < allBuoys.length; index++) {
@@ -54,12 +76,34 @@ public class PowerLawFloatingBuoy extends UniformDistributionFloatingBuoy {
 	 */
 	@Override
 	public int sample(int minimum, int maximum) {
-		Random rand = new Random();
-		double lower = 0.00001;
-		double upper = 10;
-		double n = -2;
-		double sample = Math.pow((rand.nextDouble() * (Math.pow(upper, n+1)-Math.pow(lower, n+1)) 
-				+ Math.pow(lower, n+1)), (1.0/(n+1)));
-		return (int) Math.round(((sample-lower) / (upper-lower)) * (maximum-1));
+		return scale(rand.nextDouble(), maximum);
+	}
+	
+	/**
+	 * Get a source of samples from the power-law distribution. The inverse cumulative 
+	 * distribution function has a closed form, so it is evaluated exactly instead of tabulated, 
+	 * which also keeps the far tail accurate.
+	 * 
+	 * @param minimum  the lower bound
+	 * @param maximum  the upper bound
+	 * @return  the sample source
+	 */
+	@Override
+	public SampleSource sampleSource(int minimum, int maximum) {
+		SplittableRandom source = new SplittableRandom(rand.nextLong());
+		return () -> scale(source.nextDouble(), maximum);
+	}
+	
+	/**
+	 * Map a cumulative probability to a sample through the inverse cumulative distribution 
+	 * function, scaled to [0, maximum-1].
+	 * 
+	 * @param p  the cumulative probability
+	 * @param maximum  the upper bound
+	 * @return  the sample
+	 */
+	private static int scale(double p, int maximum) {
+		double sample = Math.pow(p * SPAN_TERM + LOWER_TERM, 1.0/(N+1));
+		return (int) Math.round(((sample-LOWER) / (UPPER-LOWER)) * (maximum-1));
 	}
 }
\ No newline at end of file
@@ -0,0 +1,31 @@
+package floating_buoys;
+
+/**
+ * Source of random input values for casting. Implementations draw from a distribution whose 
+ * bounds are fixed when the source is built, so any precomputation is paid once. Not 
+ * thread-safe.
+ * 
+ * @author Ruixin Yang
+ */
+public interface SampleSource {
+	
+	/**
+	 * Generate a random sample.
+	 * 
+	 * @return  the random sample
+	 */
+	int sample();
+	
+	/**
+	 * Fill part of an array with random samples.
+	 * 
+	 * @param dst  the array
+	 * @param off  the index of the first sample
+	 * @param len  the number of samples
+	 */
+	default void fill(int[] dst, int off, int len) {
+		for (int index = off; index < off + len; index++) {
+			dst[index] = sample();
+		}
+	}
+}
\ No newline at end of file
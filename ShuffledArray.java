@@ -42,18 +42,36 @@ public class ShuffledArray {
 		// Number of input arrays
 		int run = 1;
 		
+		// Take adaptive steps instead of unit steps
+		boolean adaptiveStep = true;
+		
+		// Signed size of the last step
+		int step = 1;
+		
 		// Run the estimator on shuffled input arrays
 		while (Math.abs(error) > threshold) {
 			int[] input = generateShuffledArray(arraySize);
 			
 			for (int index = 0; index < input.length; index++) {
+				int direction = 0;
+				
 				if (input[index] > estimate) {
 					if (rand.nextDouble() < percentile) {
-						estimate++;
+						direction = 1;
 					}
 				} else if (input[index] < estimate) {
 					if (rand.nextDouble() > percentile) {
-						estimate--;
+						direction = -1;
+					}
+				}
+				
+				if (direction != 0) {
+					if (adaptiveStep) {
+						step = UniformDistributionFloatingBuoy.nextStep(step, direction);
+						estimate = UniformDistributionFloatingBuoy.stepToward(estimate, step, 
+								input[index]);
+					} else {
+						estimate += direction;
 					}
 				}
 			}
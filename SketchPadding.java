@@ -0,0 +1,18 @@
+package floating_buoys;
+
+/**
+ * Two cache lines of padding laid out ahead of the fields of {@link FloatingBuoySketch}. The JVM 
+ * places the fields of a superclass first, so the counters and random state that a sketch writes 
+ * on every offer never share a line, or an adjacent-line prefetch pair, with whatever object the 
+ * allocator or a copying collector puts just before it. The int fills the gap after a compressed 
+ * object header, which a subclass field could otherwise take.
+ * 
+ * @author Ruixin Yang
+ */
+abstract class SketchPadding {
+	
+	// Padding that fills the header gap and the two cache lines after it
+	int p;
+	long p00, p01, p02, p03, p04, p05, p06, p07;
+	long p08, p09, p10, p11, p12, p13, p14, p15;
+}
\ No newline at end of file
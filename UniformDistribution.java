@@ -3,6 +3,8 @@ package floating_buoys;
 import java.math.RoundingMode;
 import java.text.DecimalFormat;
 import java.util.Random;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Run the estimator on samples generated from an uniform distribution.
@@ -35,27 +37,64 @@ public class UniformDistribution {
 		// Estimate percentile value
 		int estimate = 0;
 		
+		// Take adaptive steps instead of unit steps
+		boolean adaptiveStep = true;
+		
+		// Signed size of the last step
+		int step = 1;
+		
+		// Number of inputs between two metric updates
+		int batchSize = 65536;
+		
+		// Report progress once a second from a background thread
+		FloatingBuoyMetrics metrics = new FloatingBuoyMetrics();
+		ScheduledFuture<?> reporter = metrics.startReporter(1, TimeUnit.SECONDS, 
+				System.out::println);
+		int actual = (int) Math.round(percentile * (range-1));
+		
 		// Run the estimator on random samples generated from an uniform distribution.
-		for (int iter = 0; iter < inputSize; iter++) {
-			int input = rand.nextInt(range);
+		for (int batch = 0; batch < inputSize; batch += batchSize) {
+			int end = Math.min(inputSize, batch + batchSize);
+			long moves = 0;
 			
-			if (input > estimate) {
-				if (rand.nextDouble() < percentile) {
-					estimate++;
+			for (int iter = batch; iter < end; iter++) {
+				int input = rand.nextInt(range);
+				int direction = 0;
+				
+				if (input > estimate) {
+					if (rand.nextDouble() < percentile) {
+						direction = 1;
+					}
+				} else if (input < estimate) {
+					if (rand.nextDouble() > percentile) {
+						direction = -1;
+					}
 				}
-			} else if (input < estimate) {
-				if (rand.nextDouble() > percentile) {
-					estimate--;
+				
+				if (direction != 0) {
+					moves++;
+					
+					if (adaptiveStep) {
+						step = UniformDistributionFloatingBuoy.nextStep(step, direction);
+						estimate = UniformDistributionFloatingBuoy.stepToward(estimate, step, 
+								input);
+					} else {
+						estimate += direction;
+					}
 				}
-			}		
+			}
 			
-			// Output
-			DECIMAL_FORMAT.setRoundingMode(RoundingMode.HALF_UP);
-			int actual = (int) Math.round(percentile * (range-1));
-			System.out.println("Run: " + iter
-					+ " Estimate: " + estimate
-					+ " Error: " + DECIMAL_FORMAT.format(
-							100 * ((double) (actual - estimate) / actual)) + "%");
+			metrics.record(end - batch, moves);
+			metrics.setError((double) (actual - estimate) / actual);
 		}
+		
+		reporter.cancel(false);
+		
+		// Output
+		DECIMAL_FORMAT.setRoundingMode(RoundingMode.HALF_UP);
+		System.out.println("Estimate: " + estimate
+				+ " Error: " + DECIMAL_FORMAT.format(
+						100 * ((double) (actual - estimate) / actual)) + "%");
+		System.out.println(metrics);
 	}
 }
\ No newline at end of file
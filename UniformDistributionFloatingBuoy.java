@@ -2,7 +2,11 @@ package floating_buoys;
 
 import java.math.RoundingMode;
 import java.text.DecimalFormat;
+import java.util.Arrays;
 import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Floating buoy algorithm for estimating percentiles on samples generated from an uniform 
@@ -18,6 +22,32 @@ public class UniformDistributionFloatingBuoy {
 	// Format for outputting decimals
 	protected static final DecimalFormat DECIMAL_FORMAT = new DecimalFormat("0.00");
 	
+	// Scale of the update thresholds (2^31)
+	protected static final double THRESHOLD_SCALE = 2147483648.0;
+	
+	// Largest step an adaptive tracer takes
+	protected static final int MAX_STEP = 1 << 20;
+	
+	// Largest movement of a group's estimate between two prunes, as a fraction of the range, for 
+	// the group to count as converged (0 to always run every cast)
+	protected double convergenceTolerance = 0;
+	
+	// Number of samples drawn to place the tracers and learn the bounds before casting (0 to 
+	// spread the tracers evenly over the given range)
+	protected int reservoirSize = 0;
+	
+	// Number of input values consumed by the last cast
+	protected long samplesUsed;
+	
+	// Buffer that receives the samples drawn by a cast, in order, or null to not record them
+	protected int[] recording;
+	
+	// Number of input values run through each tracer group by the last cast
+	protected long[] groupSamples;
+	
+	// Target percentile of each tracer group of the last cast
+	protected double[] castPercentiles;
+	
 	/**
 	 * Main class.
 	 * 
@@ -27,8 +57,8 @@ public class UniformDistributionFloatingBuoy {
 		// Number of elements spent tuning each cast
 		int castSize = 10000;
 		
-		// Number of casts
-		int numCast = 3;
+		// Maximum number of casts
+		int numCast = 100;
 		
 		// Input range (0, range-1)
 		int range = 1000000;
@@ -39,8 +69,9 @@ public class UniformDistributionFloatingBuoy {
 		// Number of tracers per group (choose t >= 2)
 		int numTracers = 11;
 		
-		// Cast the tracer groups to obtain the initial buoy locations
+		// Cast the tracer groups until their estimates move by at most 0.1% of the range
 		UniformDistributionFloatingBuoy buoys = new UniformDistributionFloatingBuoy();
+		buoys.setConvergenceTolerance(0.001);
 		int[] initialLocations = buoys.cast(numGroups, numTracers, range, castSize, numCast);
 		
 		// Connect the initial locations to get a buoy for each percentile
@@ -55,6 +86,8 @@ public class UniformDistributionFloatingBuoy {
 		DECIMAL_FORMAT.setRoundingMode(RoundingMode.HALF_UP);
 		System.out.println("Error: " + DECIMAL_FORMAT.format(100 * getError(allBuoys, range-1)) 
 				+ "%.");
+		System.out.println("Samples: " + buoys.getSamplesUsed() + " of " 
+				+ (long) castSize * numCast + ".");
 	}
 	
 	/**
@@ -68,69 +101,421 @@ public class UniformDistributionFloatingBuoy {
 	 * @return  the initial location (estimate) of each buoy (percentile)
 	 */
 	public int[] cast(int numGroups, int numTracers, int range, int castSize, int numCast) {
+		return cast(numGroups, numTracers, range, castSize, numCast, null);
+	}
+	
+	/**
+	 * Cast a set of tracer groups and prune to obtain the initial buoy locations, splitting the 
+	 * tracer groups over a fork-join pool. Every partition runs the same block of inputs and 
+	 * update thresholds and prunes its own groups, so the result matches the sequential cast for 
+	 * the same seed. With a convergence tolerance set, groups whose estimate has settled are 
+	 * skipped and the cast ends early once every group has settled. With range discovery on, the 
+	 * tracers start from the empirical quantiles of a reservoir of samples, and the returned 
+	 * bounds are the smallest and largest samples seen instead of 0 and range-1.
+	 * 
+	 * @param numGroups  number of tracer groups to cast
+	 * @param numTracers  number of tracers in each group
+	 * @param range  the maximum input value
+	 * @param castSize  the number of input elements evaluating each cast
+	 * @param numCast  the maximum number of casts
+	 * @param pool  the pool to run the partitions on, or null to cast sequentially
+	 * @return  the initial location (estimate) of each buoy (percentile)
+	 */
+	public int[] cast(int numGroups, int numTracers, int range, int castSize, int numCast, 
+			ForkJoinPool pool) {
+		return cast(getPercentiles(numGroups), numTracers, range, castSize, numCast, pool);
+	}
+	
+	/**
+	 * Cast one tracer group per target percentile, which need not be evenly spaced, so groups 
+	 * can be concentrated on the tail (see {@link #getPercentiles(int, double...)}). Query the 
+	 * result with {@link #getQuantile(int[], double[], double)} or 
+	 * {@link #linkBuoys(int[], double[])}.
+	 * 
+	 * @param percentile  the target percentiles, in ascending order within (0, 1)
+	 * @param numTracers  number of tracers in each group
+	 * @param range  the maximum input value
+	 * @param castSize  the number of input elements evaluating each cast
+	 * @param numCast  the maximum number of casts
+	 * @param pool  the pool to run the partitions on, or null to cast sequentially
+	 * @return  the minimum, the estimate of each target percentile, then the maximum
+	 */
+	public int[] cast(double[] percentile, int numTracers, int range, int castSize, int numCast, 
+			ForkJoinPool pool) {
+		samplesUsed = 0;
+		return castGroups(percentile, numTracers, range, castSize, numCast, pool);
+	}
+	
+	/**
+	 * Cast in two passes, spending the tracer groups where the distribution needs them. A coarse 
+	 * pass casts a few evenly spaced groups. The fine groups are then shared among the intervals 
+	 * between adjacent coarse buoys in proportion to how far apart the buoys are in value, since 
+	 * linear interpolation is least accurate across wide intervals, where the density is low or 
+	 * changes sharply. A second pass casts the fine groups at evenly spaced targets inside their 
+	 * intervals, on fresh samples. Query the result with the target percentiles of 
+	 * {@link #getCastPercentiles}.
+	 * 
+	 * @param numCoarse  number of evenly spaced tracer groups of the coarse pass
+	 * @param numFine  number of tracer groups placed by the second pass
+	 * @param numTracers  number of tracers in each group
+	 * @param range  the maximum input value
+	 * @param castSize  the number of input elements evaluating each cast
+	 * @param numCast  the maximum number of casts of each pass
+	 * @param pool  the pool to run the partitions on, or null to cast sequentially
+	 * @return  the minimum, the estimate of each target percentile, then the maximum
+	 */
+	public int[] castAdaptive(int numCoarse, int numFine, int numTracers, int range, int castSize, 
+			int numCast, ForkJoinPool pool) {
+		samplesUsed = 0;
+		double[] coarse = getPercentiles(numCoarse);
+		int[] coarseLocations = castGroups(coarse, numTracers, range, castSize, numCast, pool);
+		long[] coarseSamples = groupSamples;
+		
+		// Width in value of each interval between adjacent coarse buoys, bounds included
+		long[] width = new long[numCoarse+1];
+		long totalWidth = 0;
+		
+		for (int interval = 0; interval <= numCoarse; interval++) {
+			width[interval] = Math.max(1, 
+					(long) coarseLocations[interval+1] - coarseLocations[interval]);
+			totalWidth += width[interval];
+		}
+		
+		// Share the fine groups by width, handing the leftovers to the largest remainders
+		int[] share = new int[numCoarse+1];
+		double[] remainder = new double[numCoarse+1];
+		int left = numFine;
+		
+		for (int interval = 0; interval <= numCoarse; interval++) {
+			double exact = (double) numFine * width[interval] / totalWidth;
+			share[interval] = (int) exact;
+			remainder[interval] = exact - share[interval];
+			left -= share[interval];
+		}
+		
+		for (; left > 0; left--) {
+			int largest = 0;
+			
+			for (int interval = 1; interval <= numCoarse; interval++) {
+				if (remainder[interval] > remainder[largest]) {
+					largest = interval;
+				}
+			}
+			
+			share[largest]++;
+			remainder[largest] = -1;
+		}
+		
+		// Space the fine targets evenly inside their interval
+		double[] fine = new double[numFine];
+		int next = 0;
+		
+		for (int interval = 0; interval <= numCoarse; interval++) {
+			double low = interval == 0 ? 0 : coarse[interval-1];
+			double high = interval == numCoarse ? 1 : coarse[interval];
+			
+			for (int index = 1; index <= share[interval]; index++) {
+				fine[next++] = low + (high-low) * index / (share[interval]+1);
+			}
+		}
+		
+		int[] fineLocations = numFine == 0 ? coarseLocations 
+				: castGroups(fine, numTracers, range, castSize, numCast, pool);
+		long[] fineSamples = groupSamples;
+		
+		// Merge both passes in order of target percentile
+		double[] percentile = new double[numCoarse+numFine];
+		int[] output = new int[percentile.length+2];
+		groupSamples = new long[percentile.length];
+		output[0] = Math.min(coarseLocations[0], fineLocations[0]);
+		output[output.length-1] = Math.max(coarseLocations[numCoarse+1], 
+				fineLocations[fineLocations.length-1]);
+		
+		for (int index = 0, c = 0, f = 0; index < percentile.length; index++) {
+			if (f == numFine || (c < numCoarse && coarse[c] < fine[f])) {
+				percentile[index] = coarse[c];
+				output[index+1] = coarseLocations[c+1];
+				groupSamples[index] = coarseSamples[c++];
+			} else {
+				percentile[index] = fine[f];
+				output[index+1] = fineLocations[f+1];
+				groupSamples[index] = fineSamples[f++];
+			}
+		}
+		
+		castPercentiles = percentile;
+		return output;
+	}
+	
+	/**
+	 * Cast one tracer group per target percentile, adding to the samples used so far.
+	 * 
+	 * @param percentile  the target percentiles, in ascending order within (0, 1)
+	 * @param numTracers  number of tracers in each group
+	 * @param range  the maximum input value
+	 * @param castSize  the number of input elements evaluating each cast
+	 * @param numCast  the maximum number of casts
+	 * @param pool  the pool to run the partitions on, or null to cast sequentially
+	 * @return  the minimum, the estimate of each target percentile, then the maximum
+	 */
+	private int[] castGroups(double[] percentile, int numTracers, int range, int castSize, 
+			int numCast, ForkJoinPool pool) {
+		int numGroups = percentile.length;
+		
+		// Draw the samples of each cast in bulk, and the update thresholds from a generator of 
+		// this cast alone, so concurrent casts never contend on the shared random instance
+		SampleSource source = sampleSource(0, range);
+		SplittableRandom draws = new SplittableRandom(rand.nextLong());
+		
+		// Bounds of the input, learned from the samples when range discovery is on
+		int minimum = 0;
+		int maximum = range-1;
+		
 		// Initialize the set of tracers
-		int[][] tracers = initializeTracers(numGroups, numTracers, range);
+		int[] tracers;
+		
+		if (reservoirSize > 0) {
+			int[] reservoir = new int[reservoirSize];
+			source.fill(reservoir, 0, reservoirSize);
+			record(reservoir, reservoirSize);
+			Arrays.sort(reservoir);
+			samplesUsed += reservoirSize;
+			minimum = reservoir[0];
+			maximum = reservoir[reservoirSize-1];
+			tracers = initializeTracers(percentile, numTracers, reservoir);
+		} else {
+			tracers = initializeTracers(numGroups, numTracers, range);
+		}
+		
+		// Shared state of every cast
+		CastState state = new CastState(tracers, generateBaseline(tracers), 
+				getThresholds(percentile, numTracers), castSize, numTracers);
+		
+		if (convergenceTolerance > 0) {
+			state.converged = new boolean[numGroups];
+			state.lastEstimate = new int[numGroups];
+			state.maxMovement = (int) (convergenceTolerance * ((long) maximum - minimum + 1));
+			
+			for (int index = 0; index < numGroups; index++) {
+				state.lastEstimate[index] = tracers[index * numTracers + numTracers/2];
+			}
+		}
 		
-		// Generate the baseline
-		int[][] baseline = generateBaseline(tracers);
+		// Groups per parallel task
+		int grain = pool == null ? numGroups 
+				: Math.max(1, numGroups / (4 * pool.getParallelism()));
 		
-		// Generate the percentiles
-		double[] percentile = getPercentiles(numGroups);
+		groupSamples = new long[numGroups];
+		castPercentiles = percentile;
 		
-		// Run each tracer group on random samples
-		for (int cast = 0; cast < numCast; cast++) {
+		// Run each tracer group on random samples until every group has converged
+		for (int cast = 0; cast < numCast && !state.allConverged(); cast++) {
+			FloatingBuoyEvents.CastEvent event = new FloatingBuoyEvents.CastEvent();
+			event.begin();
+			source.fill(state.input, 0, castSize);
+			record(state.input, castSize);
+			
 			for (int iter = 0; iter < castSize; iter++) {
-				int input = sample(0, range);
-				double updateThreshold = rand.nextDouble();
-				
-				for (int index = 0; index < numGroups; index++) {
-					for (int estimator = 0; estimator < numTracers; estimator++) {
-						if (input > tracers[index][estimator]) {
-							if (updateThreshold < percentile[index]) {
-								tracers[index][estimator]++;
-							}
-						} else if (input < tracers[index][estimator]) {
-							if (updateThreshold > percentile[index]) {
-								tracers[index][estimator]--;
-							}
-						}
-					}
+				state.updateThreshold[iter] = draws.nextInt() >>> 1;
+			}
+			
+			// Widen the bounds to cover every sample seen
+			if (reservoirSize > 0) {
+				for (int iter = 0; iter < castSize; iter++) {
+					minimum = Math.min(minimum, state.input[iter]);
+					maximum = Math.max(maximum, state.input[iter]);
+				}
+			}
+			
+			samplesUsed += castSize;
+			
+			int activeGroups = 0;
+			
+			for (int index = 0; index < numGroups; index++) {
+				if (state.converged == null || !state.converged[index]) {
+					groupSamples[index] += castSize;
+					activeGroups++;
 				}
 			}
 			
-			// Repartition the tracers
-			prune(tracers, baseline);
-			baseline = generateBaseline(tracers);
+			// Run the tracers and repartition them
+			CastTask task = new CastTask(state, 0, numGroups, grain);
+			
+			if (pool == null) {
+				task.compute();
+			} else {
+				pool.invoke(task);
+			}
+			
+			event.round = cast;
+			event.samples = castSize;
+			event.activeGroups = activeGroups;
+			event.commit();
 		}
 		
 		// Return the estimate from the middle tracer
 		int[] output = new int[numGroups+2];
-		output[0] = 0;
-		output[numGroups+1] = range-1;
+		output[0] = minimum;
+		output[numGroups+1] = maximum;
 		
 		for (int index = 0; index < numGroups; index++) {
-			output[index+1] = baseline[index][numTracers/2];
+			output[index+1] = state.baseline[index * numTracers + numTracers/2];
 		}
 		
 		return output;
 	}
 	
 	/**
-	 * Initialize the set of tracer groups that are evenly spaced from 0 to range, inclusive.
+	 * State shared by every partition of a cast.
+	 */
+	private static class CastState {
+		
+		// Tracer groups, baseline and update thresholds
+		final int[] tracers;
+		final int[] baseline;
+		final int[] threshold;
+		
+		// Block of inputs and their random draws
+		final int[] input;
+		final int[] updateThreshold;
+		
+		// Number of tracers in each group
+		final int numTracers;
+		
+		// Whether each group has converged, or null if every cast runs every group
+		boolean[] converged;
+		
+		// Estimate of each group at its last prune
+		int[] lastEstimate;
+		
+		// Largest movement of a converged group's estimate between two prunes
+		int maxMovement;
+		
+		CastState(int[] tracers, int[] baseline, int[] threshold, int castSize, int numTracers) {
+			this.tracers = tracers;
+			this.baseline = baseline;
+			this.threshold = threshold;
+			this.input = new int[castSize];
+			this.updateThreshold = new int[castSize];
+			this.numTracers = numTracers;
+		}
+		
+		/**
+		 * Check whether every group has converged.
+		 * 
+		 * @return  true if convergence is tracked and every group has converged
+		 */
+		boolean allConverged() {
+			if (converged == null) {
+				return false;
+			}
+			
+			for (int index = 0; index < converged.length; index++) {
+				if (!converged[index]) {
+					return false;
+				}
+			}
+			
+			return true;
+		}
+	}
+	
+	/**
+	 * Run a block of inputs through a range of tracer groups and prune them, splitting the range 
+	 * in half until it is no larger than the grain. Groups that have converged are skipped.
+	 */
+	private static class CastTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		// State shared by every task
+		private final CastState state;
+		
+		// Range of tracer groups [fromGroup, toGroup)
+		private final int fromGroup;
+		private final int toGroup;
+		
+		// Maximum number of groups run without splitting
+		private final int grain;
+		
+		CastTask(CastState state, int fromGroup, int toGroup, int grain) {
+			this.state = state;
+			this.fromGroup = fromGroup;
+			this.toGroup = toGroup;
+			this.grain = grain;
+		}
+		
+		@Override
+		protected void compute() {
+			if (toGroup - fromGroup > grain) {
+				int middle = (fromGroup + toGroup) >>> 1;
+				invokeAll(new CastTask(state, fromGroup, middle, grain), 
+						new CastTask(state, middle, toGroup, grain));
+				return;
+			}
+			
+			int numTracers = state.numTracers;
+			int group = fromGroup;
+			
+			while (group < toGroup) {
+				// Find the next run of groups that are still moving
+				if (state.converged != null && state.converged[group]) {
+					group++;
+					continue;
+				}
+				
+				int end = group+1;
+				
+				while (end < toGroup && (state.converged == null || !state.converged[end])) {
+					end++;
+				}
+				
+				run(group * numTracers, end * numTracers);
+				prune(state.tracers, state.baseline, numTracers, group * numTracers, 
+						end * numTracers);
+				
+				if (state.converged != null) {
+					for (int index = group; index < end; index++) {
+						int estimate = state.tracers[index * numTracers + numTracers/2];
+						state.converged[index] = 
+								Math.abs(estimate - state.lastEstimate[index]) <= state.maxMovement;
+						state.lastEstimate[index] = estimate;
+					}
+				}
+				
+				group = end;
+			}
+		}
+		
+		/**
+		 * Run the block of inputs through the tracers in [from, to).
+		 * 
+		 * @param from  the index of the first tracer
+		 * @param to  the index after the last tracer
+		 */
+		private void run(int from, int to) {
+			for (int iter = 0; iter < state.input.length; iter++) {
+				updateTracers(state.tracers, state.threshold, from, to, state.input[iter], 
+						state.updateThreshold[iter]);
+			}
+		}
+	}
+	
+	/**
+	 * Initialize the set of tracer groups that are evenly spaced from 0 to range, inclusive. The 
+	 * groups are stored contiguously, tracer t of group g at index g * numTracers + t.
 	 * 
 	 * @param numGroups  number of tracer groups to cast
 	 * @param numTracers  number of tracers in each group
 	 * @param range  the maximum input value
 	 * @return  the initialized set of tracer groups
 	 */
-	public static int[][] initializeTracers(int numGroups, int numTracers, int range) {
-		int[][] tracers = new int[numGroups][numTracers];
+	public static int[] initializeTracers(int numGroups, int numTracers, int range) {
+		int[] tracers = new int[numGroups * numTracers];
 		
-		for (int estimator = 0; estimator < tracers[0].length; estimator++) {
-			tracers[0][estimator] = estimator * (range / (tracers[0].length-1));
-			
-			for (int index = 1; index < numGroups; index++) {
-				tracers[index][estimator] = tracers[0][estimator];
+		for (int index = 0; index < numGroups; index++) {
+			for (int estimator = 0; estimator < numTracers; estimator++) {
+				tracers[index * numTracers + estimator] = estimator * (range / (numTracers-1));
 			}
 		}
 		
@@ -138,21 +523,80 @@ public class UniformDistributionFloatingBuoy {
 	}
 	
 	/**
-	 * Generate a baseline copy of the current tracer estimates.
+	 * Initialize the set of tracer groups from a sorted reservoir of samples instead of evenly 
+	 * over the range, so that skewed inputs do not leave most tracers in empty regions. The 
+	 * middle tracer of each group starts at the empirical quantile of its target percentile, and 
+	 * the others spread out to the empirical quantiles halfway to the neighbouring groups.
 	 * 
-	 * @param tracers  the tracer array
-	 * @return  the baseline
+	 * @param numGroups  number of tracer groups to cast
+	 * @param numTracers  number of tracers in each group
+	 * @param reservoir  the samples, sorted in ascending order
+	 * @return  the initialized set of tracer groups
 	 */
-	public static int[][] generateBaseline(int[][] tracers) {
-		int[][] baseline = new int[tracers.length][tracers[0].length];
+	public static int[] initializeTracers(int numGroups, int numTracers, int[] reservoir) {
+		return initializeTracers(getPercentiles(numGroups), numTracers, reservoir);
+	}
+	
+	/**
+	 * Initialize one tracer group per target percentile from a sorted reservoir of samples.
+	 * 
+	 * @param percentile  the target percentiles, in ascending order within (0, 1)
+	 * @param numTracers  number of tracers in each group
+	 * @param reservoir  the samples, sorted in ascending order
+	 * @return  the initialized set of tracer groups
+	 */
+	public static int[] initializeTracers(double[] percentile, int numTracers, int[] reservoir) {
+		int numGroups = percentile.length;
+		int[] tracers = new int[numGroups * numTracers];
+		int middle = numTracers/2;
 		
-		for (int index = 0; index < tracers.length; index++) {
-			for (int estimator = 0; estimator < tracers[0].length; estimator++) {
-				baseline[index][estimator] = tracers[index][estimator];
+		for (int index = 0; index < numGroups; index++) {
+			double below = index == 0 ? 0 : percentile[index-1];
+			double above = index == numGroups-1 ? 1 : percentile[index+1];
+			int low = empiricalQuantile(reservoir, (below + percentile[index]) / 2);
+			int center = empiricalQuantile(reservoir, percentile[index]);
+			int high = empiricalQuantile(reservoir, (percentile[index] + above) / 2);
+			
+			for (int estimator = 0; estimator < numTracers; estimator++) {
+				tracers[index * numTracers + estimator] = estimator < middle 
+						? low + (int) ((long) estimator * (center-low) / middle) 
+						: center + (int) ((long) (estimator-middle) * (high-center) 
+								/ Math.max(1, numTracers-1-middle));
 			}
 		}
 		
-		return baseline;
+		return tracers;
+	}
+	
+	/**
+	 * Get the empirical quantile of a sorted array of samples.
+	 * 
+	 * @param sorted  the samples, sorted in ascending order
+	 * @param p  the quantile, in [0, 1]
+	 * @return  the sample at that rank
+	 */
+	private static int empiricalQuantile(int[] sorted, double p) {
+		return sorted[(int) Math.round(Math.min(1, Math.max(0, p)) * (sorted.length-1))];
+	}
+	
+	/**
+	 * Generate a baseline copy of the current tracer estimates. Only needed once, since 
+	 * {@link #prune} refreshes the baseline in place.
+	 * 
+	 * @param tracers  the tracer array
+	 * @return  the baseline
+	 */
+	public static int[] generateBaseline(int[] tracers) {
+		return tracers.clone();
+	}
+	
+	/**
+	 * Seed the random instance shared by the estimators, so that casts can be reproduced.
+	 * 
+	 * @param seed  the seed
+	 */
+	public static void setSeed(long seed) {
+		rand.setSeed(seed);
 	}
 	
 	/**
@@ -171,6 +615,196 @@ public class UniformDistributionFloatingBuoy {
 		return percentile;
 	}
 	
+	/**
+	 * Get evenly spaced target percentiles for the body of the distribution plus extra targets, 
+	 * such as 0.999 and 0.9999, so that a few groups cover the body and the rest of the budget 
+	 * goes to the tail.
+	 * 
+	 * @param numGroups  number of evenly spaced tracer groups
+	 * @param extra  the extra target percentiles, within (0, 1)
+	 * @return  the target percentiles in ascending order, without duplicates
+	 */
+	public static double[] getPercentiles(int numGroups, double... extra) {
+		double[] percentile = Arrays.copyOf(getPercentiles(numGroups), numGroups + extra.length);
+		System.arraycopy(extra, 0, percentile, numGroups, extra.length);
+		Arrays.sort(percentile);
+		int unique = 0;
+		
+		for (int index = 0; index < percentile.length; index++) {
+			if (unique == 0 || percentile[index] != percentile[unique-1]) {
+				percentile[unique++] = percentile[index];
+			}
+		}
+		
+		return Arrays.copyOf(percentile, unique);
+	}
+	
+	/**
+	 * Get the update threshold of each tracer: the target percentile of its group scaled to 
+	 * [0, 2^31).
+	 * 
+	 * @param percentile  the target percentiles
+	 * @param numTracers  number of tracers in each group
+	 * @return  the update thresholds, laid out like the tracers
+	 */
+	public static int[] getThresholds(double[] percentile, int numTracers) {
+		int[] threshold = new int[percentile.length * numTracers];
+		
+		for (int index = 0; index < percentile.length; index++) {
+			for (int estimator = 0; estimator < numTracers; estimator++) {
+				threshold[index * numTracers + estimator] = 
+						(int) (percentile[index] * THRESHOLD_SCALE);
+			}
+		}
+		
+		return threshold;
+	}
+	
+	/**
+	 * Move every tracer one step toward the input value if its update threshold allows it. The 
+	 * sign bit of (tracer - input) & (updateThreshold - threshold) is set exactly when the tracer 
+	 * is below the input and the draw is below the target percentile, and symmetrically for a 
+	 * step down, so the loop is straight-line code that the JIT can vectorize across tracers.
+	 * 
+	 * @param tracers  the tracer groups
+	 * @param threshold  the update threshold of each tracer
+	 * @param input  the input value, in [0, range)
+	 * @param updateThreshold  the random draw, in [0, 2^31)
+	 */
+	public static void updateTracers(int[] tracers, int[] threshold, int input, 
+			int updateThreshold) {
+		updateTracers(tracers, threshold, 0, tracers.length, input, updateThreshold);
+	}
+	
+	/**
+	 * Move the tracers in [from, to) one step toward the input value if their update threshold 
+	 * allows it.
+	 * 
+	 * @param tracers  the tracer groups
+	 * @param threshold  the update threshold of each tracer
+	 * @param from  the index of the first tracer
+	 * @param to  the index after the last tracer
+	 * @param input  the input value, in [0, range)
+	 * @param updateThreshold  the random draw, in [0, 2^31)
+	 */
+	public static void updateTracers(int[] tracers, int[] threshold, int from, int to, int input, 
+			int updateThreshold) {
+		for (int estimator = from; estimator < to; estimator++) {
+			int tracer = tracers[estimator];
+			int percentile = threshold[estimator];
+			tracers[estimator] = tracer 
+					+ (((tracer - input) & (updateThreshold - percentile)) >>> 31) 
+					- (((input - tracer) & (percentile - updateThreshold)) >>> 31);
+		}
+	}
+	
+	/**
+	 * Get the next adaptive step: grow the last one by a quarter while the estimate keeps moving 
+	 * in the same direction, and halve it when the estimate turns around. Far from the percentile 
+	 * the direction rarely flips, so the steps grow geometrically; near it the direction flips 
+	 * about every other move, so the steps shrink back to a few units.
+	 * 
+	 * @param step  the signed size of the last step (never 0)
+	 * @param direction  the direction of this step, 1 or -1
+	 * @return  the signed size of this step
+	 */
+	public static int nextStep(int step, int direction) {
+		int size = Math.abs(step);
+		
+		if ((step ^ direction) >= 0) {
+			return direction * Math.min(size + (size >> 2) + 1, MAX_STEP);
+		}
+		
+		return direction * Math.max(size / 2, 1);
+	}
+	
+	/**
+	 * Move an estimate by a signed step without passing the input value.
+	 * 
+	 * @param estimate  the estimate
+	 * @param step  the signed step
+	 * @param input  the input value
+	 * @return  the moved estimate
+	 */
+	public static int stepToward(int estimate, int step, int input) {
+		return step > 0 ? (int) Math.min((long) estimate + step, input) 
+				: (int) Math.max((long) estimate + step, input);
+	}
+	
+	/**
+	 * Stop casting a tracer group once its estimate moves by no more than a fraction of the range 
+	 * between two prunes, and stop the cast once every group has stopped. numCast becomes an 
+	 * upper bound on the number of casts.
+	 * 
+	 * @param convergenceTolerance  the fraction of the range, or 0 to always run every cast
+	 */
+	public void setConvergenceTolerance(double convergenceTolerance) {
+		this.convergenceTolerance = convergenceTolerance;
+	}
+	
+	/**
+	 * Learn the bounds of the input and the starting point of every tracer group from a 
+	 * reservoir of samples drawn before casting, instead of spreading the tracers evenly over 
+	 * [0, range). The reservoir counts toward {@link #getSamplesUsed}.
+	 * 
+	 * @param reservoirSize  the number of samples, or 0 to spread the tracers evenly
+	 */
+	public void setRangeDiscovery(int reservoirSize) {
+		this.reservoirSize = reservoirSize;
+	}
+	
+	/**
+	 * Record the samples drawn by subsequent casts into a buffer, so that they can be compared 
+	 * against exact quantiles. Samples beyond the end of the buffer are not recorded.
+	 * 
+	 * @param recording  the buffer, or null to stop recording
+	 */
+	public void setRecording(int[] recording) {
+		this.recording = recording;
+	}
+	
+	/**
+	 * Copy a block of samples into the recording, after the samples already used by this cast.
+	 * 
+	 * @param samples  the samples
+	 * @param length  the number of samples
+	 */
+	private void record(int[] samples, int length) {
+		if (recording != null && samplesUsed < recording.length) {
+			System.arraycopy(samples, 0, recording, (int) samplesUsed, 
+					(int) Math.min(length, recording.length - samplesUsed));
+		}
+	}
+	
+	/**
+	 * Get the number of input values consumed by the last cast.
+	 * 
+	 * @return  the number of samples
+	 */
+	public long getSamplesUsed() {
+		return samplesUsed;
+	}
+	
+	/**
+	 * Get the target percentile of each tracer group of the last cast, to query its result with 
+	 * {@link #getQuantile(int[], double[], double)} or {@link #linkBuoys(int[], double[])}.
+	 * 
+	 * @return  the target percentiles, in ascending order
+	 */
+	public double[] getCastPercentiles() {
+		return castPercentiles;
+	}
+	
+	/**
+	 * Get the number of input values run through each tracer group by the last cast. Groups that 
+	 * converged early report fewer samples than {@link #getSamplesUsed}.
+	 * 
+	 * @return  the number of samples of each group
+	 */
+	public long[] getGroupSamples() {
+		return groupSamples;
+	}
+	
 	/**
 	 * Generate a random sample from an uniform distribution [minimum, maximum).
 	 * 
@@ -183,34 +817,73 @@ public class UniformDistributionFloatingBuoy {
 	}
 	
 	/**
-	 * Prune the tracers that are far from the actual percentile and repartition.
+	 * Get a source of random samples from the same distribution as {@link #sample}. The default 
+	 * draws uniform samples from a generator of its own, seeded from the shared random instance, 
+	 * so concurrent casts never contend on it; subclasses that override {@link #sample} override 
+	 * this too.
+	 * 
+	 * @param minimum  the lower bound
+	 * @param maximum  the upper bound
+	 * @return  the sample source
+	 */
+	public SampleSource sampleSource(int minimum, int maximum) {
+		SplittableRandom source = new SplittableRandom(rand.nextLong());
+		return () -> source.nextInt(minimum, maximum);
+	}
+	
+	/**
+	 * Prune the tracers that are far from the actual percentile and repartition, then refresh 
+	 * the baseline in place.
+	 * 
+	 * @param tracers  the tracer groups
+	 * @param baseline  the baseline
+	 * @param numTracers  number of tracers in each group
+	 */
+	public static void prune(int[] tracers, int[] baseline, int numTracers) {
+		prune(tracers, baseline, numTracers, 0, tracers.length);
+	}
+	
+	/**
+	 * Prune the tracer groups stored in [from, to) and refresh their baseline in place.
 	 * 
 	 * @param tracers  the tracer groups
 	 * @param baseline  the baseline
+	 * @param numTracers  number of tracers in each group
+	 * @param from  the index of the first tracer of the first group
+	 * @param to  the index after the last tracer of the last group
 	 */
-	public static void prune(int[][] tracers, int[][] baseline) {
-		for (int index = 0; index < tracers.length; index++) {
+	public static void prune(int[] tracers, int[] baseline, int numTracers, int from, int to) {
+		boolean emit = FloatingBuoyEvents.PRUNE.isEnabled();
+		
+		for (int start = from; start < to; start += numTracers) {
 			int low = 0;
-			int high = tracers[index].length-1;
+			int high = numTracers-1;
 			
-			while (low + 1 < high && tracers[index][low+1] > baseline[index][low+1]) {
+			while (low + 1 < high && tracers[start+low+1] > baseline[start+low+1]) {
 				low++;
 			}
 			
-			while (high - 1 > low && tracers[index][high-1] < baseline[index][high-1]) {
+			while (high - 1 > low && tracers[start+high-1] < baseline[start+high-1]) {
 				high--;
 			}
 			
-			if (low != 0 || high != tracers[index].length-1) {
-				int lowValue = tracers[index][low];
-				int highValue = tracers[index][high];
+			if (low != 0 || high != numTracers-1) {
+				int lowValue = tracers[start+low];
+				int highValue = tracers[start+high];
 				
-				for (int estimator = 0; estimator < tracers[index].length; estimator++) {
-					tracers[index][estimator] = estimator * 
-							((highValue-lowValue) / (tracers[index].length-1)) + lowValue;
+				for (int estimator = 0; estimator < numTracers; estimator++) {
+					tracers[start+estimator] = estimator * 
+							((highValue-lowValue) / (numTracers-1)) + lowValue;
 				}
 			}
+			
+			if (emit) {
+				FloatingBuoyEvents.prune(start / numTracers, low, high, 
+						(long) tracers[start+numTracers-1] - tracers[start]);
+			}
 		}
+		
+		System.arraycopy(tracers, from, baseline, from, to - from);
 	}
 	
 	/**
@@ -220,6 +893,11 @@ public class UniformDistributionFloatingBuoy {
 	 * @return  the estimate for each percentile (from 0 to 100 percentile)
 	 */
 	public static int[] linkBuoys(int[] initialLocations) {
+		// Groups that do not divide the percentiles evenly take the general path
+		if (100 % (initialLocations.length-1) != 0) {
+			return linkBuoys(initialLocations, getPercentiles(initialLocations.length-2));
+		}
+		
 		// Construct the complete set of 101 linked buoys (from 0 to 100 percentile)
 		int[] allBuoys = new int[101];
 		
@@ -242,6 +920,74 @@ public class UniformDistributionFloatingBuoy {
 		return allBuoys;
 	}
 	
+	/**
+	 * Estimate an arbitrary quantile by interpolating between the two nearest initial locations.
+	 * 
+	 * @param initialLocations  the initial buoy locations, as returned by {@link #cast}
+	 * @param p  the quantile, in [0, 1]
+	 * @return  the estimate
+	 */
+	public static int getQuantile(int[] initialLocations, double p) {
+		double location = p * (initialLocations.length-1);
+		
+		if (location <= 0) {
+			return initialLocations[0];
+		} else if (location >= initialLocations.length-1) {
+			return initialLocations[initialLocations.length-1];
+		}
+		
+		int low = initialLocations[(int) location];
+		int high = initialLocations[(int) location + 1];
+		return (int) ((location-((int) location)) * (high-low) + low);
+	}
+	
+	/**
+	 * Generate all 101 buoys from initial locations cast for arbitrary target percentiles.
+	 * 
+	 * @param initialLocations  the minimum, the estimate of each target percentile, then the 
+	 *          maximum
+	 * @param percentile  the target percentiles, in ascending order
+	 * @return  the estimate for each percentile (from 0 to 100 percentile)
+	 */
+	public static int[] linkBuoys(int[] initialLocations, double[] percentile) {
+		int[] allBuoys = new int[101];
+		
+		for (int index = 0; index < allBuoys.length; index++) {
+			allBuoys[index] = getQuantile(initialLocations, percentile, index / 100.0);
+		}
+		
+		return allBuoys;
+	}
+	
+	/**
+	 * Estimate an arbitrary quantile from initial locations cast for arbitrary target 
+	 * percentiles, by interpolating between the two groups whose targets bracket it. The minimum 
+	 * and maximum act as the 0 and 1 targets.
+	 * 
+	 * @param initialLocations  the minimum, the estimate of each target percentile, then the 
+	 *          maximum
+	 * @param percentile  the target percentiles, in ascending order
+	 * @param p  the quantile, in [0, 1]
+	 * @return  the estimate
+	 */
+	public static int getQuantile(int[] initialLocations, double[] percentile, double p) {
+		if (p <= 0) {
+			return initialLocations[0];
+		} else if (p >= 1) {
+			return initialLocations[initialLocations.length-1];
+		}
+		
+		// Index of the first target at or above p, offset by one for the minimum
+		int above = Arrays.binarySearch(percentile, p);
+		above = (above < 0 ? -above-1 : above) + 1;
+		
+		double lowTarget = above == 1 ? 0 : percentile[above-2];
+		double highTarget = above == percentile.length+1 ? 1 : percentile[above-1];
+		int low = initialLocations[above-1];
+		int high = initialLocations[above];
+		return (int) ((p-lowTarget) / (highTarget-lowTarget) * (high-low) + low);
+	}
+	
 	/**
 	 * Get the percent error across all buoy estimates (percentiles).
 	 * 
@@ -3,6 +3,8 @@ package floating_buoys;
 import java.math.RoundingMode;
 import java.text.DecimalFormat;
 import java.util.Random;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Run multiple "tracer" estimators with pruning on samples generated from an uniform distribution.
@@ -44,41 +46,63 @@ public class UniformDistributionPruningTracers {
 		// Pruning frequency
 		int frequency = 100000;
 		
+		// Number of inputs between two metric updates
+		int batchSize = 65536;
+		
+		// Report progress once a second from a background thread
+		FloatingBuoyMetrics metrics = new FloatingBuoyMetrics();
+		ScheduledFuture<?> reporter = metrics.startReporter(1, TimeUnit.SECONDS, 
+				System.out::println);
+		int actual = (int) Math.round(percentile * (range-1));
+		
 		// Run the estimator on random samples generated from an uniform distribution.
-		for (int iter = 0; iter < inputSize; iter++) {
-			// Prune before the run, if necessary
-			if (iter != 0 && iter % frequency == 0) {
-				prune(tracers, baseline);
-				baseline = generateBaseline(tracers);
-			}
-			
-			int input = rand.nextInt(range);
+		for (int batch = 0; batch < inputSize; batch += batchSize) {
+			int end = Math.min(inputSize, batch + batchSize);
+			long moves = 0;
 			
-			for (int estimator = 0; estimator < numTracers; estimator++) {
-				if (input > tracers[estimator] && tracers[estimator] < Integer.MAX_VALUE) {
-					if (rand.nextDouble() < percentile) {
-						tracers[estimator]++;
-					}
-				} else if (input < tracers[estimator] && tracers[estimator] > 0) {
-					if (rand.nextDouble() > percentile) {
-						tracers[estimator]--;
+			for (int iter = batch; iter < end; iter++) {
+				// Prune before the run, if necessary
+				if (iter != 0 && iter % frequency == 0) {
+					metrics.recordPrune(prune(tracers, baseline) ? 1 : 0);
+					baseline = generateBaseline(tracers);
+				}
+				
+				int input = rand.nextInt(range);
+				
+				for (int estimator = 0; estimator < numTracers; estimator++) {
+					if (input > tracers[estimator] && tracers[estimator] < Integer.MAX_VALUE) {
+						if (rand.nextDouble() < percentile) {
+							tracers[estimator]++;
+							moves++;
+						}
+					} else if (input < tracers[estimator] && tracers[estimator] > 0) {
+						if (rand.nextDouble() > percentile) {
+							tracers[estimator]--;
+							moves++;
+						}
 					}
 				}
 			}
 			
-			// Output
-			DECIMAL_FORMAT.setRoundingMode(RoundingMode.HALF_UP);
-			int actual = (int) Math.round(percentile * (range-1));
-			System.out.print("Actual: " + actual);
-			
-			for (int estimator = 0; estimator < numTracers; estimator++) {
-				System.out.print(" [" + estimator + "] " + tracers[estimator] + ", "
-						+ DECIMAL_FORMAT.format(
-								100 * ((double) (actual - tracers[estimator]) / actual)) + "%");
-			}
-			
-			System.out.print("\n");
+			// The middle tracer stands for the estimate
+			metrics.record(end - batch, moves);
+			metrics.setError((double) (actual - tracers[numTracers/2]) / actual);
+		}
+		
+		reporter.cancel(false);
+		
+		// Output
+		DECIMAL_FORMAT.setRoundingMode(RoundingMode.HALF_UP);
+		System.out.print("Actual: " + actual);
+		
+		for (int estimator = 0; estimator < numTracers; estimator++) {
+			System.out.print(" [" + estimator + "] " + tracers[estimator] + ", "
+					+ DECIMAL_FORMAT.format(
+							100 * ((double) (actual - tracers[estimator]) / actual)) + "%");
 		}
+		
+		System.out.print("\n");
+		System.out.println(metrics);
 	}
 	
 	/**
@@ -119,8 +143,9 @@ public class UniformDistributionPruningTracers {
 	 * 
 	 * @param tracers  the tracer estimators
 	 * @param baseline  the baseline
+	 * @return  whether the tracers were collapsed onto a narrower interval
 	 */
-	public static void prune(int[] tracers, int[] baseline) {
+	public static boolean prune(int[] tracers, int[] baseline) {
 		int low = 0;
 		int high = tracers.length-1;
 		
@@ -140,6 +165,10 @@ public class UniformDistributionPruningTracers {
 				tracers[estimator] = estimator * ((highValue-lowValue) / (tracers.length-1))
 						+ lowValue;
 			}
+			
+			return true;
 		}
+		
+		return false;
 	}
 }
\ No newline at end of file
@@ -3,6 +3,8 @@ package floating_buoys;
 import java.math.RoundingMode;
 import java.text.DecimalFormat;
 import java.util.Random;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Run multiple "tracer" estimators on samples generated from an uniform distribution.
@@ -38,35 +40,57 @@ public class UniformDistributionTracers {
 		// Tracer estimators
 		int[] tracers = initializeTracers(numTracers, range);
 		
+		// Number of inputs between two metric updates
+		int batchSize = 65536;
+		
+		// Report progress once a second from a background thread
+		FloatingBuoyMetrics metrics = new FloatingBuoyMetrics();
+		ScheduledFuture<?> reporter = metrics.startReporter(1, TimeUnit.SECONDS, 
+				System.out::println);
+		int actual = (int) Math.round(percentile * (range-1));
+		
 		// Run the estimator on random samples generated from an uniform distribution.
-		for (int iter = 0; iter < inputSize; iter++) {
-			int input = rand.nextInt(range);
+		for (int batch = 0; batch < inputSize; batch += batchSize) {
+			int end = Math.min(inputSize, batch + batchSize);
+			long moves = 0;
 			
-			for (int estimator = 0; estimator < numTracers; estimator++) {
-				if (input > tracers[estimator]) {
-					if (rand.nextDouble() < percentile) {
-						tracers[estimator]++;
-					}
-				} else if (input < tracers[estimator]) {
-					if (rand.nextDouble() > percentile) {
-						tracers[estimator]--;
+			for (int iter = batch; iter < end; iter++) {
+				int input = rand.nextInt(range);
+				
+				for (int estimator = 0; estimator < numTracers; estimator++) {
+					if (input > tracers[estimator]) {
+						if (rand.nextDouble() < percentile) {
+							tracers[estimator]++;
+							moves++;
+						}
+					} else if (input < tracers[estimator]) {
+						if (rand.nextDouble() > percentile) {
+							tracers[estimator]--;
+							moves++;
+						}
 					}
 				}
 			}
 			
-			// Output
-			DECIMAL_FORMAT.setRoundingMode(RoundingMode.HALF_UP);
-			int actual = (int) Math.round(percentile * (range-1));
-			System.out.print("Actual: " + actual);
-			
-			for (int estimator = 0; estimator < numTracers; estimator++) {
-				System.out.print(" [" + estimator + "] " + tracers[estimator] + ", "
-						+ DECIMAL_FORMAT.format(
-								100 * ((double) (actual - tracers[estimator]) / actual)) + "%");
-			}
-			
-			System.out.print("\n");
+			// The middle tracer stands for the estimate
+			metrics.record(end - batch, moves);
+			metrics.setError((double) (actual - tracers[numTracers/2]) / actual);
 		}
+		
+		reporter.cancel(false);
+		
+		// Output
+		DECIMAL_FORMAT.setRoundingMode(RoundingMode.HALF_UP);
+		System.out.print("Actual: " + actual);
+		
+		for (int estimator = 0; estimator < numTracers; estimator++) {
+			System.out.print(" [" + estimator + "] " + tracers[estimator] + ", "
+					+ DECIMAL_FORMAT.format(
+							100 * ((double) (actual - tracers[estimator]) / actual)) + "%");
+		}
+		
+		System.out.print("\n");
+		System.out.println(metrics);
 	}
 	
 	/**
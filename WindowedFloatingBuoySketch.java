@@ -0,0 +1,250 @@
+package floating_buoys;
+
+import java.util.SplittableRandom;
+
+/**
+ * Floating buoy sketch over a sliding time window. The window is split into a ring of 
+ * sub-windows, each a {@link FloatingBuoySketch}; values go into the newest sub-window, and when 
+ * it expires the oldest one is reset and reused. Queries merge the live sub-windows, weighting 
+ * each by its count. With a decay below 1, a sub-window's weight is also multiplied by the decay 
+ * once per sub-window of age, giving an exponentially decayed estimate truncated at the ring. 
+ * Memory is fixed by the number of sub-windows, and only the start time of the newest sub-window 
+ * is kept. Not thread-safe.
+ * 
+ * @author Ruixin Yang
+ */
+public class WindowedFloatingBuoySketch {
+	
+	// Ring of sub-window sketches
+	private final FloatingBuoySketch[] windows;
+	
+	// Index of the newest sub-window
+	private int current;
+	
+	// Start of the newest sub-window, in System.nanoTime() units
+	private long windowStart;
+	
+	// Length of a sub-window in nanoseconds
+	private final long windowNanos;
+	
+	// Weight multiplier per sub-window of age (1 for a plain sliding window)
+	private final double decay;
+	
+	// Number of tracer groups
+	private final int numGroups;
+	
+	// Number of tracers per group
+	private final int numTracers;
+	
+	// Input range (0, range-1)
+	private final int range;
+	
+	// Number of offers between two prunes of each sub-window
+	private final int pruneFrequency;
+	
+	/**
+	 * Construct a sliding-window sketch.
+	 * 
+	 * @param numGroups  number of tracer groups (choose g s.t. 100 % g+1 = 0 and 0 < g <= 99)
+	 * @param numTracers  number of tracers per group (choose t >= 2)
+	 * @param range  the maximum input value
+	 * @param pruneFrequency  number of offers between two prunes of each sub-window
+	 * @param numWindows  the number of sub-windows
+	 * @param windowNanos  the length of a sub-window in nanoseconds
+	 * @param decay  the weight multiplier per sub-window of age, in (0, 1]
+	 * @param now  the current time, in System.nanoTime() units
+	 */
+	public WindowedFloatingBuoySketch(int numGroups, int numTracers, int range, int pruneFrequency,
+			int numWindows, long windowNanos, double decay, long now) {
+		this.numGroups = numGroups;
+		this.numTracers = numTracers;
+		this.range = range;
+		this.pruneFrequency = pruneFrequency;
+		this.windowNanos = windowNanos;
+		this.decay = decay;
+		this.windowStart = now;
+		this.windows = new FloatingBuoySketch[numWindows];
+		
+		for (int window = 0; window < numWindows; window++) {
+			windows[window] = new FloatingBuoySketch(numGroups, numTracers, range, pruneFrequency);
+		}
+	}
+	
+	/**
+	 * Construct a plain sliding-window sketch starting now.
+	 * 
+	 * @param numGroups  number of tracer groups (choose g s.t. 100 % g+1 = 0 and 0 < g <= 99)
+	 * @param numTracers  number of tracers per group (choose t >= 2)
+	 * @param range  the maximum input value
+	 * @param pruneFrequency  number of offers between two prunes of each sub-window
+	 * @param numWindows  the number of sub-windows
+	 * @param windowNanos  the length of a sub-window in nanoseconds
+	 */
+	public WindowedFloatingBuoySketch(int numGroups, int numTracers, int range, int pruneFrequency,
+			int numWindows, long windowNanos) {
+		this(numGroups, numTracers, range, pruneFrequency, numWindows, windowNanos, 1,
+				System.nanoTime());
+	}
+	
+	/**
+	 * Expire the sub-windows that have ended by the given time. Each new sub-window starts from 
+	 * evenly spaced tracers rather than from the tracers of the one before it: those have 
+	 * collapsed around the old quantiles and, moving by unit steps, would keep reporting values 
+	 * that have already left the window after the stream shifts.
+	 * 
+	 * @param now  the current time, in System.nanoTime() units
+	 */
+	public void advance(long now) {
+		long elapsed = now - windowStart;
+		
+		if (elapsed < windowNanos) {
+			return;
+		}
+		
+		long expired = elapsed / windowNanos;
+		
+		for (long window = 0; window < Math.min(expired, windows.length); window++) {
+			current = (current+1) % windows.length;
+			windows[current].reset();
+		}
+		
+		windowStart += expired * windowNanos;
+	}
+	
+	/**
+	 * Push a single input value into the newest sub-window. Does not allocate.
+	 * 
+	 * @param value  the input value
+	 * @param now  the current time, in System.nanoTime() units
+	 */
+	public void offer(int value, long now) {
+		advance(now);
+		windows[current].offer(value);
+	}
+	
+	/**
+	 * Push a single input value into the newest sub-window at the current time.
+	 * 
+	 * @param value  the input value
+	 */
+	public void offer(int value) {
+		offer(value, System.nanoTime());
+	}
+	
+	/**
+	 * Push a block of input values that arrived together into the newest sub-window. Does not 
+	 * allocate.
+	 * 
+	 * @param values  the input values
+	 * @param off  the index of the first value
+	 * @param len  the number of values
+	 * @param now  the current time, in System.nanoTime() units
+	 */
+	public void offer(int[] values, int off, int len, long now) {
+		advance(now);
+		windows[current].offer(values, off, len);
+	}
+	
+	/**
+	 * Combine the live sub-windows into one sketch, newest first, discounting each by the decay 
+	 * once per sub-window of age.
+	 * 
+	 * @param now  the current time, in System.nanoTime() units
+	 * @return  the combined sketch
+	 */
+	public FloatingBuoySketch combine(long now) {
+		advance(now);
+		FloatingBuoySketch combined = new FloatingBuoySketch(numGroups, numTracers, range,
+				pruneFrequency);
+		double weight = 1;
+		
+		for (int age = 0; age < windows.length; age++) {
+			combined.merge(windows[(current - age + windows.length) % windows.length], weight);
+			weight *= decay;
+		}
+		
+		return combined;
+	}
+	
+	/**
+	 * Generate all 101 buoys over the window ending at the given time.
+	 * 
+	 * @param now  the current time, in System.nanoTime() units
+	 * @return  the estimate for each percentile (from 0 to 100 percentile)
+	 */
+	public int[] buoys(long now) {
+		return combine(now).buoys();
+	}
+	
+	/**
+	 * Estimate an arbitrary quantile over the window ending at the given time.
+	 * 
+	 * @param p  the quantile, in [0, 1]
+	 * @param now  the current time, in System.nanoTime() units
+	 * @return  the estimate
+	 */
+	public int quantile(double p, long now) {
+		return combine(now).quantile(p);
+	}
+	
+	/**
+	 * Get the number of values in the window ending at the given time, before any decay.
+	 * 
+	 * @param now  the current time, in System.nanoTime() units
+	 * @return  the count
+	 */
+	public long count(long now) {
+		advance(now);
+		long total = 0;
+		
+		for (FloatingBuoySketch window : windows) {
+			total += window.count();
+		}
+		
+		return total;
+	}
+	
+	/**
+	 * Main class.
+	 * 
+	 * @param args  no arguments necessary
+	 */
+	public static void main(String[] args) {
+		// Input range (0, range-1)
+		int range = 1000000;
+		
+		// Input values per simulated second
+		int rate = 100000;
+		
+		// Sixty one-second sub-windows, on a simulated clock
+		long second = 1000000000L;
+		long now = 0;
+		WindowedFloatingBuoySketch window = new WindowedFloatingBuoySketch(4, 11, range, 1000, 60,
+				second, 1, now);
+		WindowedFloatingBuoySketch decayed = new WindowedFloatingBuoySketch(4, 11, range, 1000,
+				60, second, 0.9, now);
+		SplittableRandom input = new SplittableRandom();
+		
+		// The stream shifts to the upper half of the range after two minutes
+		for (int elapsed = 0; elapsed < 240; elapsed++) {
+			int offset = elapsed < 120 ? 0 : range/2;
+			
+			for (int iter = 0; iter < rate; iter++) {
+				int value = offset + input.nextInt(range/2);
+				window.offer(value, now);
+				decayed.offer(value, now);
+			}
+			
+			now += second;
+			
+			if (elapsed % 20 == 19) {
+				// Exact p50 of the values in the window, from the share of lower-half seconds
+				double lower = (60 - Math.min(Math.max(elapsed+1 - 120, 0), 60)) / 60.0;
+				long exact = Math.round(lower >= 0.5 ? 0.5 / lower * (range/2) 
+						: range/2 + (0.5-lower) / (1-lower) * (range/2));
+				System.out.println(elapsed+1 + " s: window p50 " + window.quantile(0.5, now)
+						+ " (exact " + exact + "), decayed p50 " + decayed.quantile(0.5, now));
+			}
+		}
+	}
+}
\ No newline at end of file
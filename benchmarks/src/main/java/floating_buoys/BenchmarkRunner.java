@@ -0,0 +1,31 @@
+package floating_buoys;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Run the benchmarks with the GC profiler attached, so every result also reports its allocation 
+ * rate. Accepts the usual JMH command line options, e.g. a benchmark regex or -p numGroups=99.
+ * 
+ * @author Ruixin Yang
+ */
+public class BenchmarkRunner {
+	
+	/**
+	 * Main class.
+	 * 
+	 * @param args  JMH command line options
+	 * @throws CommandLineOptionException  if the options cannot be parsed
+	 * @throws RunnerException  if a benchmark fails
+	 */
+	public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+		new Runner(new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.addProfiler(GCProfiler.class)
+				.build()).run();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,61 @@
+package floating_buoys;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of a full {@link UniformDistributionFloatingBuoy#cast}, including sampling.
+ * 
+ * @author Ruixin Yang
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CastBenchmark {
+	
+	// Number of tracer groups to cast
+	@Param({"4", "9", "99"})
+	public int numGroups;
+	
+	// Number of tracers per group
+	@Param({"11"})
+	public int numTracers;
+	
+	// Number of elements spent tuning each cast
+	@Param({"10000"})
+	public int castSize;
+	
+	// Input range (0, range-1)
+	@Param({"1000000"})
+	public int range;
+	
+	// Number of casts
+	@Param({"3"})
+	public int numCast;
+	
+	// Estimator under test
+	private final UniformDistributionFloatingBuoy buoys = new UniformDistributionFloatingBuoy();
+	
+	/**
+	 * Cast the tracer groups once.
+	 * 
+	 * @return  the initial buoy locations
+	 */
+	@Benchmark
+	public int[] cast() {
+		return buoys.cast(numGroups, numTracers, range, castSize, numCast);
+	}
+}
\ No newline at end of file
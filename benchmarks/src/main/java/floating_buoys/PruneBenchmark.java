@@ -0,0 +1,121 @@
+package floating_buoys;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of {@link UniformDistributionFloatingBuoy#prune} and 
+ * {@link UniformDistributionFloatingBuoy#linkBuoys}. A prune lasts well under a microsecond, 
+ * too short for a per-invocation setup to be timed accurately, so each invocation restores the 
+ * tracers itself; subtract the {@link #restore} score to get the prune alone.
+ * 
+ * @author Ruixin Yang
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PruneBenchmark {
+	
+	// Number of tracer groups to cast
+	@Param({"4", "9", "99"})
+	public int numGroups;
+	
+	// Number of tracers per group
+	@Param({"11"})
+	public int numTracers;
+	
+	// Number of elements run through the tracers before each prune
+	@Param({"10000"})
+	public int castSize;
+	
+	// Input range (0, range-1)
+	@Param({"1000000"})
+	public int range;
+	
+	// Tracers after one cast, before pruning
+	private int[] castTracers;
+	
+	// Baseline before the cast
+	private int[] castBaseline;
+	
+	// Working copies handed to prune
+	private int[] tracers;
+	private int[] baseline;
+	
+	// Initial locations handed to linkBuoys
+	private int[] initialLocations;
+	
+	/**
+	 * Run one cast worth of uniform samples through fresh tracers.
+	 */
+	@Setup(Level.Trial)
+	public void cast() {
+		SplittableRandom rand = new SplittableRandom(42);
+		castTracers = UniformDistributionFloatingBuoy.initializeTracers(numGroups, numTracers, 
+				range);
+		castBaseline = UniformDistributionFloatingBuoy.generateBaseline(castTracers);
+		int[] threshold = UniformDistributionFloatingBuoy.getThresholds(
+				UniformDistributionFloatingBuoy.getPercentiles(numGroups), numTracers);
+		
+		for (int iter = 0; iter < castSize; iter++) {
+			UniformDistributionFloatingBuoy.updateTracers(castTracers, threshold, 
+					rand.nextInt(range), rand.nextInt() >>> 1);
+		}
+		
+		tracers = castTracers.clone();
+		baseline = castBaseline.clone();
+		initialLocations = new UniformDistributionFloatingBuoy().cast(numGroups, numTracers, 
+				range, castSize, 1);
+	}
+	
+	/**
+	 * Restore the tracers to their state before the prune, the overhead included in 
+	 * {@link #prune}.
+	 * 
+	 * @return  the restored tracers
+	 */
+	@Benchmark
+	public int[] restore() {
+		System.arraycopy(castTracers, 0, tracers, 0, tracers.length);
+		System.arraycopy(castBaseline, 0, baseline, 0, baseline.length);
+		return tracers;
+	}
+	
+	/**
+	 * Restore the tracers, then prune every tracer group once.
+	 * 
+	 * @return  the pruned tracers
+	 */
+	@Benchmark
+	public int[] prune() {
+		restore();
+		UniformDistributionFloatingBuoy.prune(tracers, baseline, numTracers);
+		return tracers;
+	}
+	
+	/**
+	 * Link the initial locations into all 101 buoys.
+	 * 
+	 * @return  the buoys
+	 */
+	@Benchmark
+	public int[] linkBuoys() {
+		return UniformDistributionFloatingBuoy.linkBuoys(initialLocations);
+	}
+}
\ No newline at end of file
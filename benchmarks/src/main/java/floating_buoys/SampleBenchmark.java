@@ -0,0 +1,94 @@
+package floating_buoys;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of a single sample() and of a bulk fill from the sample source of every distribution.
+ * 
+ * @author Ruixin Yang
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SampleBenchmark {
+	
+	// Distribution to sample from
+	@Param({"uniform", "gaussian", "powerLaw", "beta"})
+	public String distribution;
+	
+	// Input range (0, range-1)
+	@Param({"1000000"})
+	public int range;
+	
+	// Number of samples per bulk fill
+	@Param({"10000"})
+	public int castSize;
+	
+	// Estimator whose sample() is measured
+	private UniformDistributionFloatingBuoy buoys;
+	
+	// Sample source of the estimator
+	private SampleSource source;
+	
+	// Buffer filled in bulk
+	private int[] input;
+	
+	/**
+	 * Pick the estimator for the distribution.
+	 */
+	@Setup
+	public void setUp() {
+		switch (distribution) {
+			case "gaussian":
+				buoys = new GaussianDistributionFloatingBuoy();
+				break;
+			case "powerLaw":
+				buoys = new PowerLawFloatingBuoy();
+				break;
+			case "beta":
+				buoys = new BetaDistributionFloatingBuoy();
+				break;
+			default:
+				buoys = new UniformDistributionFloatingBuoy();
+		}
+		
+		source = buoys.sampleSource(0, range);
+		input = new int[castSize];
+	}
+	
+	/**
+	 * Draw one sample.
+	 * 
+	 * @return  the sample
+	 */
+	@Benchmark
+	public int sample() {
+		return buoys.sample(0, range);
+	}
+	
+	/**
+	 * Fill one cast worth of samples from the sample source.
+	 * 
+	 * @return  the samples
+	 */
+	@Benchmark
+	public int[] fill() {
+		source.fill(input, 0, castSize);
+		return input;
+	}
+}
\ No newline at end of file
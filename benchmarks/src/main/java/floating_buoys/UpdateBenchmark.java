@@ -0,0 +1,147 @@
+package floating_buoys;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the tracer update of the int, long and double engines, per input value.
+ * 
+ * @author Ruixin Yang
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@OperationsPerInvocation(UpdateBenchmark.BLOCK_SIZE)
+public class UpdateBenchmark {
+	
+	// Number of input values run per invocation
+	static final int BLOCK_SIZE = 1024;
+	
+	// Number of tracer groups
+	@Param({"4", "99"})
+	public int numGroups;
+	
+	// Number of tracers per group
+	@Param({"11"})
+	public int numTracers;
+	
+	// Input range (0, range-1) of the int engine, scaled for the others
+	@Param({"1000000"})
+	public int range;
+	
+	// Update threshold of each tracer, shared by the engines
+	private int[] threshold;
+	
+	// Tracers of each engine, the long and double ones as grid points
+	private int[] intTracers;
+	private int[] longTracers;
+	private int[] doubleTracers;
+	
+	// Grid of the long and double engines
+	private int longShift;
+	private double doubleResolution;
+	
+	// Inputs of each engine and their random draws
+	private int[] intInput;
+	private long[] longInput;
+	private double[] doubleInput;
+	private int[] updateThreshold;
+	
+	/**
+	 * Build the tracers and a block of uniform inputs.
+	 */
+	@Setup(Level.Trial)
+	public void setup() {
+		SplittableRandom rand = new SplittableRandom(42);
+		double[] percentile = UniformDistributionFloatingBuoy.getPercentiles(numGroups);
+		threshold = UniformDistributionFloatingBuoy.getThresholds(percentile, numTracers);
+		intInput = new int[BLOCK_SIZE];
+		longInput = new long[BLOCK_SIZE];
+		doubleInput = new double[BLOCK_SIZE];
+		updateThreshold = new int[BLOCK_SIZE];
+		
+		for (int iter = 0; iter < BLOCK_SIZE; iter++) {
+			intInput[iter] = rand.nextInt(range);
+			longInput[iter] = intInput[iter] * 1000L;
+			doubleInput[iter] = (double) intInput[iter] / range;
+			updateThreshold[iter] = rand.nextInt() >>> 1;
+		}
+		
+		// The long and double engines place their tracers and grid from the block
+		long[] longReservoir = longInput.clone();
+		double[] doubleReservoir = doubleInput.clone();
+		Arrays.sort(longReservoir);
+		Arrays.sort(doubleReservoir);
+		longShift = LongFloatingBuoy.getShift(percentile, longReservoir, range * 1000L);
+		doubleResolution = DoubleFloatingBuoy.getResolution(percentile, doubleReservoir, 0, 1);
+		intTracers = UniformDistributionFloatingBuoy.initializeTracers(numGroups, numTracers,
+				range);
+		longTracers = LongFloatingBuoy.initializeTracers(percentile, numTracers, longReservoir,
+				longShift);
+		doubleTracers = DoubleFloatingBuoy.initializeTracers(percentile, numTracers,
+				doubleReservoir, 0, doubleResolution);
+	}
+	
+	/**
+	 * Run the block through the int tracers.
+	 * 
+	 * @return  the tracers
+	 */
+	@Benchmark
+	public int[] updateInt() {
+		for (int iter = 0; iter < BLOCK_SIZE; iter++) {
+			UniformDistributionFloatingBuoy.updateTracers(intTracers, threshold, intInput[iter],
+					updateThreshold[iter]);
+		}
+		
+		return intTracers;
+	}
+	
+	/**
+	 * Run the block through the long tracers.
+	 * 
+	 * @return  the tracers
+	 */
+	@Benchmark
+	public int[] updateLong() {
+		for (int iter = 0; iter < BLOCK_SIZE; iter++) {
+			LongFloatingBuoy.updateTracers(longTracers, threshold, longInput[iter], longShift,
+					updateThreshold[iter]);
+		}
+		
+		return longTracers;
+	}
+	
+	/**
+	 * Run the block through the double tracers.
+	 * 
+	 * @return  the tracers
+	 */
+	@Benchmark
+	public int[] updateDouble() {
+		for (int iter = 0; iter < BLOCK_SIZE; iter++) {
+			DoubleFloatingBuoy.updateTracers(doubleTracers, threshold, doubleInput[iter],
+					updateThreshold[iter], 0, doubleResolution);
+		}
+		
+		return doubleTracers;
+	}
+}
\ No newline at end of file